@@ -0,0 +1,291 @@
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BoundedTaskQueue is a thread-safe priority queue of tasks with a fixed capacity.
+ * Tasks come out in priority order (1 = highest), and tasks with equal priority
+ * come out in the order they were added. Producers block when the queue is full
+ * (backpressure) and consumers can take several tasks per lock acquisition.
+ */
+public class BoundedTaskQueue {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Binary min-heap kept in two parallel arrays so no wrapper object is needed per task
+    private final Task[] heap;
+    private final long[] sequence;
+    private int size = 0;
+    private long nextSequence = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor to create an empty queue
+     * @param capacity The maximum number of tasks the queue can hold
+     */
+    public BoundedTaskQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.heap = new Task[capacity];
+        this.sequence = new long[capacity];
+    }
+
+    /**
+     * Add a task, waiting while the queue is full
+     * @param task The task to add
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public void put(Task task) throws InterruptedException {
+        checkNotNull(task);
+        lock.lockInterruptibly();
+        try {
+            while (size == heap.length && !closed) {
+                notFull.await();
+            }
+            checkOpen();
+            insert(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a task if there is room, without waiting
+     * @param task The task to add
+     * @return True if the task was added, false if the queue is full
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public boolean offer(Task task) {
+        checkNotNull(task);
+        lock.lock();
+        try {
+            checkOpen();
+            if (size == heap.length) {
+                return false;
+            }
+            insert(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a task, waiting up to the given time for room to become available
+     * @param task The task to add
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return True if the task was added, false if the time ran out first
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public boolean offer(Task task, long timeout, TimeUnit unit) throws InterruptedException {
+        checkNotNull(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == heap.length && !closed) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            checkOpen();
+            insert(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove up to maxTasks tasks in priority order without waiting
+     * @param batch The array to fill, starting at index 0
+     * @param maxTasks The most tasks to remove
+     * @return The number of tasks removed
+     */
+    public int drainTo(Task[] batch, int maxTasks) {
+        lock.lock();
+        try {
+            return removeBatch(batch, maxTasks);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove every queued task in priority order without waiting
+     * @param target The collection that receives the tasks
+     * @return The number of tasks removed
+     */
+    public int drainTo(Collection<Task> target) {
+        lock.lock();
+        try {
+            int count = size;
+            while (size > 0) {
+                target.add(removeFirst());
+            }
+            if (count > 0) {
+                notFull.signalAll();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove up to maxTasks tasks in priority order, waiting up to the given time
+     * for at least one to arrive
+     * @param batch The array to fill, starting at index 0
+     * @param maxTasks The most tasks to remove
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return The number of tasks removed, or -1 if the queue is closed and empty
+     */
+    public int pollBatch(Task[] batch, int maxTasks, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                if (nanos <= 0) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return removeBatch(batch, maxTasks);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting new tasks. Tasks already queued can still be removed.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether the queue has been closed
+     * @return True if no more tasks will be accepted
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of queued tasks
+     * @return The current queue size
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum number of tasks the queue can hold
+     * @return The queue capacity
+     */
+    public int capacity() {
+        return heap.length;
+    }
+
+    private int removeBatch(Task[] batch, int maxTasks) {
+        int limit = Math.min(Math.min(maxTasks, batch.length), size);
+        for (int i = 0; i < limit; i++) {
+            batch[i] = removeFirst();
+        }
+        if (limit > 0) {
+            // Several slots may have opened up, so wake every waiting producer
+            notFull.signalAll();
+        }
+        return limit;
+    }
+
+    private void insert(Task task) {
+        int i = size++;
+        long seq = nextSequence++;
+        // Sift up
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(task, seq, heap[parent], sequence[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            sequence[i] = sequence[parent];
+            i = parent;
+        }
+        heap[i] = task;
+        sequence[i] = seq;
+        notEmpty.signal();
+    }
+
+    private Task removeFirst() {
+        Task first = heap[0];
+        int last = --size;
+        Task task = heap[last];
+        long seq = sequence[last];
+        heap[last] = null;
+        if (last > 0) {
+            // Sift down
+            int i = 0;
+            int half = last >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < last && before(heap[right], sequence[right], heap[child], sequence[child])) {
+                    child = right;
+                }
+                if (!before(heap[child], sequence[child], task, seq)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                sequence[i] = sequence[child];
+                i = child;
+            }
+            heap[i] = task;
+            sequence[i] = seq;
+        }
+        return first;
+    }
+
+    private static boolean before(Task a, long seqA, Task b, long seqB) {
+        int cmp = a.compareTo(b);
+        return cmp < 0 || (cmp == 0 && seqA < seqB);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+    }
+
+    private static void checkNotNull(Task task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+    }
+}
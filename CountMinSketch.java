@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * CountMinSketch estimates how often each item occurs in a stream using a fixed
+ * depth x width table of counters. Each item is counted in one counter per row,
+ * chosen by a different hash, and its estimate is the smallest of those counters.
+ *
+ * Estimates never undercount. With width ceil(e / epsilon) and depth
+ * ceil(ln(1 / delta)), an estimate exceeds the true count by more than
+ * epsilon * (total count) with probability at most delta. Memory depends only on
+ * epsilon and delta. Sketches with the same dimensions can be merged.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] table;
+    private long totalCount;
+
+    /**
+     * Create a sketch with given error bounds
+     * @param epsilon The error, as a fraction of the total count, such as 0.0001
+     * @param delta The probability of exceeding that error, such as 0.01
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        this((int) Math.ceil(Math.E / checkFraction(epsilon, "epsilon")),
+                (int) Math.ceil(Math.log(1 / checkFraction(delta, "delta"))));
+    }
+
+    /**
+     * Create a sketch with explicit dimensions
+     * @param width The counters per row
+     * @param depth The number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0 || (long) width * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad dimensions: " + width + " x " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.table = new long[width * depth];
+    }
+
+    /** Count one occurrence of an item */
+    public void add(Object item) {
+        addHash(StreamSketches.hash64(item), 1);
+    }
+
+    /** Count one occurrence of a long value */
+    public void add(long value) {
+        addHash(StreamSketches.mix64(value), 1);
+    }
+
+    /**
+     * Count occurrences of an item by its 64-bit hash
+     * @param hash A well mixed hash of the item
+     * @param count The number of occurrences, at least 0
+     */
+    public void addHash(long hash, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count-Min cannot subtract: " + count);
+        }
+        // Row hashes h1 + i * h2 behave like independent hashes (Kirsch and Mitzenmacher)
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+            table[row * width + column] += count;
+        }
+        totalCount += count;
+    }
+
+    /** Return the estimated number of occurrences of an item */
+    public long estimate(Object item) {
+        return estimateHash(StreamSketches.hash64(item));
+    }
+
+    /** Return the estimated number of occurrences of a long value */
+    public long estimate(long value) {
+        return estimateHash(StreamSketches.mix64(value));
+    }
+
+    /** Return the estimated number of occurrences of an item by its hash */
+    public long estimateHash(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+            estimate = Math.min(estimate, table[row * width + column]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Add every count from another sketch to this one
+     * @param other A sketch with the same width and depth
+     * @return This sketch
+     */
+    public CountMinSketch merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge " + other.width + " x " + other.depth
+                    + " into " + width + " x " + depth);
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        totalCount += other.totalCount;
+        return this;
+    }
+
+    /** Return the sum of all counts added */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /** Forget everything added */
+    public void clear() {
+        Arrays.fill(table, 0);
+        totalCount = 0;
+    }
+
+    /** Return the most an estimate is likely to exceed the true count, e / width * total */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * totalCount);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private static double checkFraction(double value, String name) {
+        if (!(value > 0 && value < 1)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1: " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "CountMinSketch{" + width + " x " + depth + ", total=" + totalCount + "}";
+    }
+}
@@ -0,0 +1,368 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * DivideAndConquer runs a recursive algorithm described by four steps instead of
+ * a hand-written recursive method:
+ *
+ *   isBase     is the problem small enough to solve directly?
+ *   solveBase  solve it directly
+ *   split      break it into smaller problems
+ *   combine    build its answer from the answers to the parts, in split order
+ *
+ * solve() runs on the calling thread with its own stack of pending problems on
+ * the heap (a trampoline), so recursion a million levels deep is fine. Only the
+ * heap limits the depth, never the thread's stack.
+ *
+ * solveParallel() runs on a ForkJoinPool. Parts are forked while they are worth
+ * it: while a problem is larger than the cutoff (when a size is given), while the
+ * forking depth is modest, and while the pool has little queued work (the
+ * surplus-task test java.util.stream also uses). Below that each worker falls
+ * back to the trampoline. The default cutoff splits the root into about eight
+ * pieces per worker.
+ *
+ * withMemo(capacity) adds a concurrent cache of answers keyed by problem, for
+ * algorithms whose parts overlap (Fibonacci, binomials, edit distance). Problems
+ * then need equals and hashCode. The least recently used answers are evicted
+ * once the cache is full.
+ *
+ * @param <P> The type of problem
+ * @param <R> The type of answer
+ */
+public class DivideAndConquer<P, R> {
+    // Forking stops below this depth whatever the sizes, which bounds the thread stack
+    private static final int MAX_FORK_DEPTH = 64;
+    // Stop forking while each worker already has this many tasks waiting to be stolen
+    private static final int SURPLUS_LIMIT = 3;
+    private static final int PIECES_PER_WORKER = 8;
+
+    /**
+     * A size-bounded cache that many threads can use at once. Entries are spread
+     * over 16 independently locked LRU maps by hash, so eviction is least recently
+     * used within each stripe.
+     */
+    public static final class MemoCache<K, V> {
+        private static final int STRIPES = 16;
+
+        private final List<Map<K, V>> stripes;
+        private final int capacity;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        /**
+         * Create a cache
+         * @param capacity The most answers kept
+         */
+        public MemoCache(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+            }
+            this.capacity = capacity;
+            int perStripe = (capacity + STRIPES - 1) / STRIPES;
+            stripes = new ArrayList<>(STRIPES);
+            for (int i = 0; i < STRIPES; i++) {
+                stripes.add(new LinkedHashMap<K, V>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                        return size() > perStripe;
+                    }
+                });
+            }
+        }
+
+        /** Return the answer for a key, or null if it is not cached */
+        public V get(K key) {
+            Map<K, V> stripe = stripeFor(key);
+            V value;
+            synchronized (stripe) {
+                value = stripe.get(key);
+            }
+            (value != null ? hits : misses).increment();
+            return value;
+        }
+
+        /** Cache an answer; null answers are not cached */
+        public void put(K key, V value) {
+            if (value == null) {
+                return;
+            }
+            Map<K, V> stripe = stripeFor(key);
+            synchronized (stripe) {
+                stripe.put(key, value);
+            }
+        }
+
+        /** Return the number of answers cached */
+        public int size() {
+            int size = 0;
+            for (Map<K, V> stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.size();
+                }
+            }
+            return size;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /** Forget every answer and reset the hit counts */
+        public void clear() {
+            for (Map<K, V> stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.clear();
+                }
+            }
+            hits.reset();
+            misses.reset();
+        }
+
+        private Map<K, V> stripeFor(K key) {
+            int hash = key == null ? 0 : key.hashCode();
+            hash ^= hash >>> 16;
+            return stripes.get(hash & (STRIPES - 1));
+        }
+
+        @Override
+        public String toString() {
+            return "MemoCache{size=" + size() + ", capacity=" + capacity + ", hits=" + getHits()
+                    + ", misses=" + getMisses() + "}";
+        }
+    }
+
+    private final Predicate<? super P> isBase;
+    private final Function<? super P, ? extends R> solveBase;
+    private final Function<? super P, ? extends List<? extends P>> split;
+    private final BiFunction<? super P, List<R>, ? extends R> combine;
+    private ToLongFunction<? super P> size;
+    private long cutoff = -1;
+    private MemoCache<P, R> memo;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private DivideAndConquer(Predicate<? super P> isBase, Function<? super P, ? extends R> solveBase,
+            Function<? super P, ? extends List<? extends P>> split, BiFunction<? super P, List<R>, ? extends R> combine) {
+        this.isBase = isBase;
+        this.solveBase = solveBase;
+        this.split = split;
+        this.combine = combine;
+    }
+
+    /**
+     * Describe an algorithm
+     * @param isBase True for problems to solve directly
+     * @param solveBase Solves a base problem
+     * @param split Breaks any other problem into parts
+     * @param combine Builds a problem's answer from its parts' answers, given in split order
+     * @return The algorithm, ready to solve problems
+     */
+    public static <P, R> DivideAndConquer<P, R> of(Predicate<? super P> isBase, Function<? super P, ? extends R> solveBase,
+            Function<? super P, ? extends List<? extends P>> split, BiFunction<? super P, List<R>, ? extends R> combine) {
+        return new DivideAndConquer<>(isBase, solveBase, split, combine);
+    }
+
+    /**
+     * Tell the parallel solver how big a problem is, such as the length of a
+     * range, so it can stop forking once problems get small
+     * @param size The size of a problem
+     * @return This algorithm
+     */
+    public DivideAndConquer<P, R> withSize(ToLongFunction<? super P> size) {
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * Solve problems no larger than this on one thread. Needs withSize; the
+     * default is the root size over eight pieces per worker.
+     * @param cutoff The largest size solved without forking
+     * @return This algorithm
+     */
+    public DivideAndConquer<P, R> withCutoff(long cutoff) {
+        if (cutoff < 1) {
+            throw new IllegalArgumentException("Cutoff must be at least 1: " + cutoff);
+        }
+        this.cutoff = cutoff;
+        return this;
+    }
+
+    /**
+     * Cache answers so problems that come up again are not solved again
+     * @param capacity The most answers kept
+     * @return This algorithm
+     */
+    public DivideAndConquer<P, R> withMemo(int capacity) {
+        this.memo = new MemoCache<>(capacity);
+        return this;
+    }
+
+    /**
+     * Run solveParallel on a given pool instead of the common pool
+     * @param pool The pool
+     * @return This algorithm
+     */
+    public DivideAndConquer<P, R> withPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /** Return the memo cache, or null if there is none */
+    public MemoCache<P, R> getMemo() {
+        return memo;
+    }
+
+    // A problem waiting on its parts. results collects their answers by position.
+    private static final class Frame<P> {
+        final P problem;
+        final Frame<P> parent;
+        final int slot;
+        List<? extends P> parts;
+        Object[] results;
+        int next;
+
+        Frame(P problem, Frame<P> parent, int slot) {
+            this.problem = problem;
+            this.parent = parent;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * Solve a problem on the calling thread. Pending problems are kept on the
+     * heap rather than the call stack, so depth is not limited by the stack size.
+     * @param problem The problem
+     * @return Its answer
+     */
+    @SuppressWarnings("unchecked")
+    public R solve(P problem) {
+        ArrayDeque<Frame<P>> stack = new ArrayDeque<>();
+        stack.push(new Frame<>(problem, null, 0));
+        R answer = null;
+        while (!stack.isEmpty()) {
+            Frame<P> frame = stack.peek();
+            R value = null;
+            boolean done = false;
+            if (frame.parts == null) {
+                // First visit: answer from the cache or directly, or split
+                value = memo == null ? null : memo.get(frame.problem);
+                if (value != null) {
+                    done = true;
+                } else if (isBase.test(frame.problem)) {
+                    value = remember(frame.problem, solveBase.apply(frame.problem));
+                    done = true;
+                } else {
+                    frame.parts = split.apply(frame.problem);
+                    frame.results = new Object[frame.parts.size()];
+                }
+            }
+            if (!done) {
+                if (frame.next < frame.parts.size()) {
+                    int slot = frame.next++;
+                    stack.push(new Frame<>(frame.parts.get(slot), frame, slot));
+                    continue;
+                }
+                value = remember(frame.problem, combine.apply(frame.problem, (List<R>) Arrays.asList(frame.results)));
+            }
+            stack.pop();
+            if (frame.parent == null) {
+                answer = value;
+            } else {
+                frame.parent.results[frame.slot] = value;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Solve a problem on the fork-join pool
+     * @param problem The problem
+     * @return Its answer
+     */
+    public R solveParallel(P problem) {
+        long threshold = cutoff;
+        if (size != null && threshold < 0) {
+            long pieces = (long) pool.getParallelism() * PIECES_PER_WORKER;
+            threshold = Math.max(1, size.applyAsLong(problem) / pieces);
+        }
+        return pool.invoke(new SolveTask(problem, 0, threshold));
+    }
+
+    private R remember(P problem, R value) {
+        if (memo != null) {
+            memo.put(problem, value);
+        }
+        return value;
+    }
+
+    private final class SolveTask extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final P problem;
+        private final int depth;
+        private final long threshold;
+
+        SolveTask(P problem, int depth, long threshold) {
+            this.problem = problem;
+            this.depth = depth;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected R compute() {
+            R cached = memo == null ? null : memo.get(problem);
+            if (cached != null) {
+                return cached;
+            }
+            if (isBase.test(problem)) {
+                return remember(problem, solveBase.apply(problem));
+            }
+            if (depth >= MAX_FORK_DEPTH
+                    || (size != null && size.applyAsLong(problem) <= threshold)
+                    || getSurplusQueuedTaskCount() > SURPLUS_LIMIT) {
+                return solve(problem);
+            }
+            List<? extends P> parts = split.apply(problem);
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[parts.size()];
+            for (int i = parts.size() - 1; i >= 1; i--) {
+                tasks[i] = new SolveTask(parts.get(i), depth + 1, threshold).fork();
+            }
+            Object[] results = new Object[parts.size()];
+            if (parts.size() > 0) {
+                results[0] = new SolveTask(parts.get(0), depth + 1, threshold).compute();
+            }
+            // Join in the reverse order of forking, so the most recent fork can
+            // often be taken back and run here instead of waiting
+            for (int i = 1; i < parts.size(); i++) {
+                results[i] = tasks[i].join();
+            }
+            @SuppressWarnings("unchecked")
+            List<R> answers = (List<R>) Arrays.asList(results);
+            return remember(problem, combine.apply(problem, answers));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DivideAndConquer{cutoff=" + (cutoff < 0 ? "auto" : cutoff) + ", memo=" + memo + "}";
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * HyperLogLog estimates how many distinct items a stream contains using a fixed
+ * array of 2^precision one-byte registers, however long the stream is. Each item
+ * is hashed to 64 bits; the top bits pick a register and the register keeps the
+ * longest run of leading zeros seen in the rest of the hash.
+ *
+ * The relative standard error is about 1.04 / sqrt(2^precision): precision 14
+ * uses 16 KB and is typically within 0.8%. Sketches with the same precision can be
+ * merged, so partitions of a stream can be counted separately and combined.
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Create an empty sketch
+     * @param precision The number of index bits, from 4 to 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Create a sketch sized for a target error
+     * @param relativeError The wanted relative standard error, such as 0.01
+     * @return A sketch with the smallest precision that meets it
+     */
+    public static HyperLogLog withError(double relativeError) {
+        int precision = MIN_PRECISION;
+        while (precision < MAX_PRECISION && 1.04 / Math.sqrt(1 << precision) > relativeError) {
+            precision++;
+        }
+        return new HyperLogLog(precision);
+    }
+
+    /** Add an item */
+    public void add(Object item) {
+        addHash(StreamSketches.hash64(item));
+    }
+
+    /** Add a long value */
+    public void add(long value) {
+        addHash(StreamSketches.mix64(value));
+    }
+
+    /**
+     * Add an item by its 64-bit hash. The hash must be well mixed.
+     * @param hash The hash
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The guard bit caps the count so an all-zero remainder still gives a finite rank
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /** Return the estimated number of distinct items added */
+    public long estimate() {
+        int m = registers.length;
+        double inverseSum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            inverseSum += Double.longBitsToDouble((1023L - register) << 52); // 2^-register
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / inverseSum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Few items: counting empty registers is more accurate (linear counting)
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Add everything counted by another sketch to this one
+     * @param other A sketch with the same precision
+     * @return This sketch
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        return this;
+    }
+
+    /** Return the number of index bits */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /** Return the expected relative standard error of estimate() */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /** Forget everything added */
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog{precision=" + precision + ", estimate=" + estimate() + "}";
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * IndexedTaskHeap is a binary min-heap of tasks that remembers where each task
+ * sits in its array. That lets it remove a task or move it after its priority
+ * changed in O(log n), where java.util.PriorityQueue needs an O(n) search.
+ *
+ * The position is stored in the task itself, so a task can be in at most one
+ * IndexedTaskHeap at a time. Tasks are matched by identity, not equals().
+ */
+public class IndexedTaskHeap extends AbstractCollection<Task> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Comparator<? super Task> comparator;
+    private Task[] heap = new Task[INITIAL_CAPACITY];
+    private int size = 0;
+    private int modCount = 0;
+
+    /**
+     * Create an empty heap ordered by task priority
+     */
+    public IndexedTaskHeap() {
+        this(Comparator.naturalOrder());
+    }
+
+    /**
+     * Create an empty heap with a custom ordering
+     * @param comparator The ordering, smallest first
+     */
+    public IndexedTaskHeap(Comparator<? super Task> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Add a task in O(log n)
+     * @param task The task to add
+     * @return Always true
+     * @throws IllegalArgumentException if the task is already in a heap
+     */
+    @Override
+    public boolean add(Task task) {
+        if (task.heapIndex >= 0) {
+            throw new IllegalArgumentException("Task is already in a heap: " + task);
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = task;
+        task.heapIndex = size;
+        size++;
+        siftUp(size - 1);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Return the first task without removing it
+     * @return The first task, or null if the heap is empty
+     */
+    public Task peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    /**
+     * Remove and return the first task in O(log n)
+     * @return The first task, or null if the heap is empty
+     */
+    public Task poll() {
+        if (size == 0) {
+            return null;
+        }
+        Task first = heap[0];
+        removeAt(0);
+        return first;
+    }
+
+    /**
+     * Remove a task in O(log n)
+     * @param o The task to remove
+     * @return True if this exact task was in the heap
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        removeAt(((Task) o).heapIndex);
+        return true;
+    }
+
+    /**
+     * Check in O(1) whether this exact task is in the heap
+     * @param o The task to look for
+     * @return True if the task is in this heap
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Task)) {
+            return false;
+        }
+        int index = ((Task) o).heapIndex;
+        return index >= 0 && index < size && heap[index] == o;
+    }
+
+    /**
+     * Restore the heap order after a task's key changed, in O(log n).
+     * This is decrease-key or increase-key depending on the direction of the change.
+     * @param task A task in this heap whose priority was just changed
+     * @throws IllegalArgumentException if the task is not in this heap
+     */
+    public void update(Task task) {
+        if (!contains(task)) {
+            throw new IllegalArgumentException("Task is not in this heap: " + task);
+        }
+        int index = task.heapIndex;
+        siftUp(index);
+        if (heap[index] == task) {
+            siftDown(index);
+        }
+        modCount++;
+    }
+
+    /**
+     * Restore the heap order after many keys changed at once, in O(n)
+     */
+    public void heapify() {
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        modCount++;
+    }
+
+    /**
+     * Replace the contents of the heap with the given tasks, in O(n)
+     * @param tasks The tasks to hold
+     */
+    public void rebuild(Collection<Task> tasks) {
+        clear();
+        if (heap.length < tasks.size()) {
+            heap = new Task[tasks.size()];
+        }
+        for (Task task : tasks) {
+            if (task.heapIndex >= 0) {
+                throw new IllegalArgumentException("Task is already in a heap: " + task);
+            }
+            heap[size] = task;
+            task.heapIndex = size;
+            size++;
+        }
+        heapify();
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].heapIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Return the ordering used by this heap */
+    public Comparator<? super Task> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Return the first k tasks in order without changing the heap, in O(k log k)
+     * @param k The most tasks to return
+     * @return Up to k tasks, first task first
+     */
+    public List<Task> topN(int k) {
+        List<Task> result = new ArrayList<>(Math.min(k, size));
+        Iterator<Task> it = orderedIterator();
+        while (result.size() < k && it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    /**
+     * Iterate in sorted order without copying or changing the heap. Each step
+     * costs O(log k) after k steps, so reading only the first few tasks is cheap.
+     * The heap must not be changed while the iterator is in use.
+     * @return An iterator over the tasks, first task first
+     */
+    public Iterator<Task> orderedIterator() {
+        return new OrderedIterator();
+    }
+
+    /** Iterate in heap (not sorted) order */
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<Task>() {
+            private final int expectedModCount = modCount;
+            private int current = 0;
+
+            @Override
+            public boolean hasNext() {
+                return current < size;
+            }
+
+            @Override
+            public Task next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (current >= size) {
+                    throw new NoSuchElementException();
+                }
+                return heap[current++];
+            }
+        };
+    }
+
+    /**
+     * Walks the heap best-first. The frontier is a small heap of array positions:
+     * taking a position out puts its two children in, since they are the only
+     * tasks that can come next from that part of the heap.
+     */
+    private class OrderedIterator implements Iterator<Task> {
+        private final int expectedModCount = modCount;
+        private int[] frontier = new int[16];
+        private int count = 0;
+
+        OrderedIterator() {
+            if (size > 0) {
+                push(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return count > 0;
+        }
+
+        @Override
+        public Task next() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (count == 0) {
+                throw new NoSuchElementException();
+            }
+            int index = frontier[0];
+            frontier[0] = frontier[--count];
+            if (count > 0) {
+                siftFrontierDown();
+            }
+            int child = 2 * index + 1;
+            if (child < size) {
+                push(child);
+                if (child + 1 < size) {
+                    push(child + 1);
+                }
+            }
+            return heap[index];
+        }
+
+        private void push(int index) {
+            if (count == frontier.length) {
+                frontier = Arrays.copyOf(frontier, count * 2);
+            }
+            int i = count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (comparator.compare(heap[index], heap[frontier[parent]]) >= 0) {
+                    break;
+                }
+                frontier[i] = frontier[parent];
+                i = parent;
+            }
+            frontier[i] = index;
+        }
+
+        private void siftFrontierDown() {
+            int index = frontier[0];
+            int i = 0;
+            int half = count >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < count && comparator.compare(heap[frontier[right]], heap[frontier[child]]) < 0) {
+                    child = right;
+                }
+                if (comparator.compare(heap[index], heap[frontier[child]]) <= 0) {
+                    break;
+                }
+                frontier[i] = frontier[child];
+                i = child;
+            }
+            frontier[i] = index;
+        }
+    }
+
+    private void removeAt(int index) {
+        Task removed = heap[index];
+        removed.heapIndex = -1;
+        int last = --size;
+        if (index != last) {
+            Task moved = heap[last];
+            heap[index] = moved;
+            moved.heapIndex = index;
+            heap[last] = null;
+            siftUp(index);
+            if (heap[index] == moved) {
+                siftDown(index);
+            }
+        } else {
+            heap[last] = null;
+        }
+        modCount++;
+    }
+
+    private void siftUp(int index) {
+        Task task = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            Task parentTask = heap[parent];
+            if (comparator.compare(task, parentTask) >= 0) {
+                break;
+            }
+            heap[index] = parentTask;
+            parentTask.heapIndex = index;
+            index = parent;
+        }
+        heap[index] = task;
+        task.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        Task task = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && comparator.compare(heap[right], heap[child]) < 0) {
+                child = right;
+            }
+            if (comparator.compare(task, heap[child]) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = task;
+        task.heapIndex = index;
+    }
+}
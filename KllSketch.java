@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * KllSketch estimates quantiles (median, p95, p99 and so on) of a stream while
+ * keeping only a few hundred items, using the KLL algorithm of Karnin, Lang and
+ * Liberty. Items live in levels of compactors; an item at level h stands for
+ * 2^h original items. When a level fills up it is sorted and every other item
+ * (starting at a random offset) moves up a level, halving its size.
+ *
+ * Level capacities shrink by a factor of 2/3 from the top level down, so memory
+ * is about 3k items however long the stream is. With the default k = 200 the
+ * rank of a returned quantile is typically within 1% of the requested rank (and
+ * within about 1.7% with 99% confidence); the error shrinks roughly as 1/k.
+ * Sketches with the same k can be merged.
+ *
+ * Queries sort the retained items once and cache the result until the next
+ * update, so repeated quantile calls take microseconds.
+ *
+ * @param <T> The type of item
+ */
+public class KllSketch<T extends Comparable<? super T>> {
+    public static final int DEFAULT_K = 200;
+    private static final int MIN_CAPACITY = 8;
+    private static final double SHRINK = 2.0 / 3.0;
+
+    private final int k;
+    private final List<List<T>> levels = new ArrayList<>();
+    private long count = 0;
+    private int retained = 0;
+    private long randomState = 0x9E3779B97F4A7C15L;
+
+    // Retained items in order with their cumulative weights; null after an update
+    private Object[] sortedItems;
+    private long[] cumulativeWeights;
+
+    /** Create a sketch with k = 200 */
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Create a sketch
+     * @param k The accuracy parameter; larger is more accurate and uses more memory
+     */
+    public KllSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + ": " + k);
+        }
+        this.k = k;
+        levels.add(new ArrayList<>());
+    }
+
+    /** Add an item; nulls are ignored */
+    public void add(T item) {
+        if (item == null) {
+            return;
+        }
+        levels.get(0).add(item);
+        count++;
+        retained++;
+        sortedItems = null;
+        if (retained >= totalCapacity()) {
+            compress();
+        }
+    }
+
+    /**
+     * Add everything from another sketch with the same k
+     * @param other The sketch to merge in
+     * @return This sketch
+     */
+    public KllSketch<T> merge(KllSketch<T> other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Cannot merge k=" + other.k + " into k=" + k);
+        }
+        while (levels.size() < other.levels.size()) {
+            levels.add(new ArrayList<>());
+        }
+        for (int level = 0; level < other.levels.size(); level++) {
+            levels.get(level).addAll(other.levels.get(level));
+        }
+        count += other.count;
+        retained += other.retained;
+        sortedItems = null;
+        while (retained >= totalCapacity()) {
+            compress();
+        }
+        return this;
+    }
+
+    /**
+     * Return an item whose rank is close to q * n
+     * @param q A fraction from 0 to 1, such as 0.5 for the median or 0.99 for p99
+     * @return The estimated quantile, or null if the sketch is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T quantile(double q) {
+        if (q < 0 || q > 1 || Double.isNaN(q)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        if (count == 0) {
+            return null;
+        }
+        ensureSorted();
+        long target = Math.max(1, (long) Math.ceil(q * count));
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        if (index < 0) {
+            index = -index - 1; // First item whose cumulative weight reaches the target
+        }
+        return (T) sortedItems[Math.min(index, sortedItems.length - 1)];
+    }
+
+    /**
+     * Return the estimated fraction of items less than or equal to a value
+     * @param value The value
+     * @return A fraction from 0 to 1, or 0 if the sketch is empty
+     */
+    @SuppressWarnings("unchecked")
+    public double rank(T value) {
+        if (count == 0) {
+            return 0;
+        }
+        ensureSorted();
+        int low = 0;
+        int high = sortedItems.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (((T) sortedItems[middle]).compareTo(value) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == 0 ? 0 : (double) cumulativeWeights[low - 1] / count;
+    }
+
+    /** Return the number of items added */
+    public long getCount() {
+        return count;
+    }
+
+    /** Return the number of items the sketch is holding */
+    public int getRetainedItems() {
+        return retained;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.size() - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(SHRINK, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            total += capacity(level);
+        }
+        return total;
+    }
+
+    /** Compact the lowest level that is over its capacity */
+    private void compress() {
+        for (int level = 0; level < levels.size(); level++) {
+            List<T> items = levels.get(level);
+            if (items.size() < capacity(level)) {
+                continue;
+            }
+            if (level + 1 == levels.size()) {
+                levels.add(new ArrayList<>());
+            }
+            items.sort(null);
+            // With an odd count the first item stays behind, so only pairs are halved
+            int start = items.size() % 2;
+            List<T> above = levels.get(level + 1);
+            int offset = nextBit();
+            for (int i = start + offset; i < items.size(); i += 2) {
+                above.add(items.get(i));
+            }
+            int promoted = (items.size() - start) / 2;
+            retained -= promoted;
+            List<T> kept = start == 1 ? new ArrayList<>(items.subList(0, 1)) : new ArrayList<>();
+            levels.set(level, kept);
+            return;
+        }
+    }
+
+    private void ensureSorted() {
+        if (sortedItems != null) {
+            return;
+        }
+        // Pair each item with its weight, then sort by item
+        Object[] items = new Object[retained];
+        long[] weights = new long[retained];
+        Integer[] order = new Integer[retained];
+        int n = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            for (T item : levels.get(level)) {
+                items[n] = item;
+                weights[n] = 1L << level;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> compare(items[a], items[b]));
+        sortedItems = new Object[n];
+        cumulativeWeights = new long[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            sortedItems[i] = items[order[i]];
+            total += weights[order[i]];
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        return ((T) a).compareTo((T) b);
+    }
+
+    private int nextBit() {
+        // xorshift: cheap and reproducible
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        return (int) (randomState >>> 63);
+    }
+
+    @Override
+    public String toString() {
+        return "KllSketch{k=" + k + ", count=" + count + ", retained=" + retained + "}";
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts durations in log-linear buckets, in the style of
+ * HdrHistogram. Values below 128 get one bucket each. Each later power of two
+ * is split into 64 buckets, so any recorded value is known to within about
+ * 1.5%, across the whole range of a long.
+ *
+ * Recording is a few shifts and one array store: it never allocates and never
+ * takes a lock. There must be only one recording thread at a time (for example
+ * a thread holding a lock), but any thread may read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(3); // count, sum, max
+
+    /**
+     * Record one value. Negative values are recorded as 0.
+     * @param value The value, usually nanoseconds
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = indexOf(value);
+        // Single writer, so an ordered store is enough; no atomic read-modify-write
+        counts.lazySet(index, counts.get(index) + 1);
+        totals.lazySet(0, totals.get(0) + 1);
+        totals.lazySet(1, totals.get(1) + value);
+        if (value > totals.get(2)) {
+            totals.lazySet(2, value);
+        }
+    }
+
+    /** Return the number of recorded values */
+    public long getCount() {
+        return totals.get(0);
+    }
+
+    /** Return the largest recorded value, or 0 if there are none */
+    public long getMax() {
+        return totals.get(2);
+    }
+
+    /** Return the mean of the recorded values, or 0 if there are none */
+    public double getMean() {
+        long count = totals.get(0);
+        return count == 0 ? 0 : (double) totals.get(1) / count;
+    }
+
+    /**
+     * Return the value at a percentile
+     * @param percentile A percentile from 0 to 100
+     * @return The upper bound of the bucket holding that percentile, or 0 if
+     *         nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        return valueAtPercentile(snapshot(null), percentile, getMax());
+    }
+
+    /** Forget every recorded value */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.lazySet(i, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            totals.lazySet(i, 0);
+        }
+    }
+
+    /**
+     * Add this histogram's bucket counts into an array
+     * @param into The array to add to, or null to start a new one
+     * @return The array
+     */
+    long[] snapshot(long[] into) {
+        if (into == null) {
+            into = new long[BUCKETS];
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            into[i] += counts.get(i);
+        }
+        return into;
+    }
+
+    /** Find a percentile in bucket counts taken by snapshot */
+    static long valueAtPercentile(long[] buckets, double percentile, long max) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                // Never report more than was actually seen
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        // Shift the value down until it fits in [64, 128); the shift picks the power of two
+        int shift = Math.max(0, 64 - SUB_BUCKET_BITS - 1 - Long.numberOfLeadingZeros(value));
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
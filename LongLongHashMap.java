@@ -0,0 +1,250 @@
+import java.util.Arrays;
+
+/**
+ * LongLongHashMap maps longs to longs with no boxing and no per-entry
+ * allocation, laid out like ObjectIntHashMap: parallel key and value arrays,
+ * linear probing, backward-shift removal and at most two-thirds full. The key 0
+ * is kept in a separate field because 0 marks a free slot.
+ */
+public class LongLongHashMap {
+    private static final int MIN_CAPACITY = 8;
+
+    /** Receives the entries of forEach */
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    private long[] keys;
+    private long[] values;
+    private int size = 0; // Including the key 0
+    private boolean hasZeroKey = false;
+    private long zeroValue;
+    private int shift;
+    private int threshold;
+
+    /** Create an empty map */
+    public LongLongHashMap() {
+        this(0);
+    }
+
+    /**
+     * Create a map that holds expectedSize keys without growing
+     * @param expectedSize The number of keys expected
+     */
+    public LongLongHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** Return the number of keys */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Return true if the map has the key */
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /** Return the value for a key, or defaultValue if the key is not in the map */
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    /**
+     * Map a key to a value
+     * @return The value it replaced, or 0 if the key is new
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long old = hasZeroKey ? zeroValue : 0;
+            addZeroKey();
+            zeroValue = value;
+            return old;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            long old = values[index];
+            values[index] = value;
+            return old;
+        }
+        insertAt(-index - 1, key, value);
+        return 0;
+    }
+
+    /**
+     * Add delta to a key's value, starting from 0 if the key is new
+     * @return The new value
+     */
+    public long increment(long key, long delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                addZeroKey();
+                zeroValue = 0;
+            }
+            return zeroValue += delta;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            return values[index] += delta;
+        }
+        insertAt(-index - 1, key, delta);
+        return delta;
+    }
+
+    /**
+     * Remove a key
+     * @return Its value, or 0 if the key was not in the map
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return 0;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return 0;
+        }
+        long old = values[index];
+        removeAt(index);
+        return old;
+    }
+
+    /** Remove every key, keeping the current capacity */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /** Call an action for every key and value, in no particular order */
+    public void forEach(EntryConsumer action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+        long[] table = keys;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0) {
+                action.accept(table[i], values[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(key).append('=').append(value);
+        });
+        return result.append('}').toString();
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Smallest power of two whose threshold admits expectedSize keys
+        int capacity = MIN_CAPACITY;
+        while (thresholdFor(capacity) < expectedSize) {
+            if (capacity == 1 << 30) {
+                throw new IllegalArgumentException("Too many keys: " + expectedSize);
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // The table grows before an insert would make it more than two-thirds full
+    private static int thresholdFor(int capacity) {
+        return (int) (capacity * 2L / 3);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+        threshold = thresholdFor(capacity);
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /** Return the slot holding a nonzero key, or -(empty slot where it would go) - 1 */
+    private int indexOf(long key) {
+        long[] table = keys;
+        int mask = table.length - 1;
+        for (int i = slotOf(key); ; i = (i + 1) & mask) {
+            long stored = table[i];
+            if (stored == key) {
+                return i;
+            }
+            if (stored == 0) {
+                return -i - 1;
+            }
+        }
+    }
+
+    private void addZeroKey() {
+        if (!hasZeroKey) {
+            hasZeroKey = true;
+            size++;
+        }
+    }
+
+    private void insertAt(int index, long key, long value) {
+        if (size >= threshold) {
+            grow();
+            index = -indexOf(key) - 1;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Close the gap left by a removal, as in ObjectIntHashMap
+    private void removeAt(int hole) {
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = slotOf(keys[i]);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        size--;
+    }
+}
@@ -0,0 +1,145 @@
+package chapter24;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A sorted set stored in a MyBTreeMap, the way java.util.TreeSet is stored in
+ * a TreeMap. It has the map's navigation (floor, ceiling, lower, higher), order
+ * statistics (rank, select) and range scans, and fromSorted builds one from
+ * sorted elements in O(n).
+ */
+public class MyBTreeSet<E extends Comparable<? super E>> extends AbstractSet<E> {
+    // Value for every key, so put and remove can tell whether the key was there
+    private static final Object PRESENT = new Object();
+
+    private final MyBTreeMap<E, Object> map;
+
+    /** Create an empty set */
+    public MyBTreeSet() {
+        this(new MyBTreeMap<>());
+    }
+
+    private MyBTreeSet(MyBTreeMap<E, Object> map) {
+        this.map = map;
+    }
+
+    /** Build a set from elements in strictly increasing order in O(n) */
+    public static <E extends Comparable<? super E>> MyBTreeSet<E> fromSorted(E[] elements) {
+        Object[] values = new Object[elements.length];
+        Arrays.fill(values, PRESENT);
+        return new MyBTreeSet<>(MyBTreeMap.fromSorted(elements, values));
+    }
+
+    @Override
+    /** Add an element; return true if it was not already in the set */
+    public boolean add(E e) {
+        return map.put(e, PRESENT) == null;
+    }
+
+    @Override
+    /** Remove an element; return true if it was in the set */
+    public boolean remove(Object o) {
+        return map.remove(o) == PRESENT;
+    }
+
+    @Override
+    /** Return true if the set has the element */
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    @Override
+    /** Return the number of elements */
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    /** Remove every element */
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    /** Return an iterator over the elements in increasing order */
+    public Iterator<E> iterator() {
+        return map.keySet().iterator();
+    }
+
+    /** Return the smallest element */
+    public E first() {
+        return map.firstKey();
+    }
+
+    /** Return the largest element */
+    public E last() {
+        return map.lastKey();
+    }
+
+    /** Return the largest element less than or equal to e, or null if there is none */
+    public E floor(E e) {
+        return map.floorKey(e);
+    }
+
+    /** Return the largest element strictly less than e, or null if there is none */
+    public E lower(E e) {
+        return map.lowerKey(e);
+    }
+
+    /** Return the smallest element greater than or equal to e, or null if there is none */
+    public E ceiling(E e) {
+        return map.ceilingKey(e);
+    }
+
+    /** Return the smallest element strictly greater than e, or null if there is none */
+    public E higher(E e) {
+        return map.higherKey(e);
+    }
+
+    /** Return the number of elements less than e */
+    public int rank(E e) {
+        return map.rank(e);
+    }
+
+    /** Return the element at an index in increasing order (0 for the smallest) */
+    public E select(int index) {
+        return map.select(index);
+    }
+
+    /**
+     * Return the number of elements from fromElement (inclusive) to toElement
+     * (exclusive) in O(log n). A null bound means no limit on that side.
+     */
+    public int countRange(E fromElement, E toElement) {
+        return map.countRange(fromElement, toElement);
+    }
+
+    /**
+     * Return the elements from fromElement (inclusive) to toElement (exclusive)
+     * in increasing order. A null bound means no limit on that side.
+     */
+    public Iterable<E> range(E fromElement, E toElement) {
+        return () -> new Iterator<E>() {
+            private final Iterator<Map.Entry<E, Object>> entries =
+                map.range(fromElement, toElement).iterator();
+
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return entries.next().getKey();
+            }
+
+            @Override
+            public void remove() {
+                entries.remove();
+            }
+        };
+    }
+}
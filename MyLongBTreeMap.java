@@ -0,0 +1,734 @@
+package chapter24;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.OptionalLong;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * MyBTreeMap with primitive long keys. Keys are kept in long arrays, so a node's
+ * keys are the numbers themselves, packed side by side, rather than references
+ * to Long objects scattered over the heap. Nothing is boxed on the way in or
+ * out: lookups take a long, navigation returns OptionalLong, and scans hand
+ * keys to an EntryConsumer or a PrimitiveIterator.OfLong.
+ *
+ * Range bounds are fromKey inclusive and toKey exclusive, as in MyBTreeMap.
+ */
+public class MyLongBTreeMap<V> {
+    /** The most keys in a leaf and the most children of an inner node */
+    public static final int NODE_CAPACITY = 64;
+    /** Nodes other than the root never hold fewer than this */
+    private static final int MIN_FILL = NODE_CAPACITY / 2;
+
+    /** Receives the entries of a scan */
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /** A leaf holds keys and values; an inner node holds children */
+    private abstract static class Node {
+        int count; // Keys in a leaf, children in an inner node
+        long[] keys;
+    }
+
+    private static final class Leaf extends Node {
+        final Object[] values = new Object[NODE_CAPACITY];
+        Leaf next;
+        Leaf previous;
+
+        Leaf() {
+            keys = new long[NODE_CAPACITY];
+        }
+    }
+
+    private static final class Inner extends Node {
+        // keys[i] is no greater than any key under children[i + 1] and greater
+        // than every key under children[i]
+        final Node[] children = new Node[NODE_CAPACITY];
+        final int[] sizes = new int[NODE_CAPACITY]; // Keys under each child
+
+        Inner() {
+            keys = new long[NODE_CAPACITY - 1];
+        }
+    }
+
+    private Node root = new Leaf();
+    private int size = 0;
+    private int modCount = 0;
+
+    // Left behind by insert and delete for the callers further up
+    private long promotedKey;   // First key of the node a split just created
+    private Object oldValue;    // Value replaced or removed
+    private boolean sizeChanged;
+
+    /** Create an empty map */
+    public MyLongBTreeMap() {
+    }
+
+    /**
+     * Build a map from keys in increasing order in O(n)
+     * @param keys The keys, strictly increasing
+     * @param values The value for each key, or null to map every key to null
+     * @return The map
+     */
+    public static <V> MyLongBTreeMap<V> fromSorted(long[] keys, V[] values) {
+        if (values != null && values.length != keys.length)
+            throw new IllegalArgumentException("Got " + keys.length + " keys but " + values.length + " values");
+        for (int i = 1; i < keys.length; i++)
+            if (keys[i - 1] >= keys[i])
+                throw new IllegalArgumentException("Keys are not strictly increasing at index " + i);
+
+        MyLongBTreeMap<V> map = new MyLongBTreeMap<>();
+        int n = keys.length;
+        if (n == 0)
+            return map;
+
+        // Spread the keys evenly over as few leaves as possible, so none is under MIN_FILL
+        int leafCount = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        Node[] level = new Node[leafCount];
+        long[] lowestKeys = new long[leafCount];
+        int[] levelSizes = new int[leafCount];
+        Leaf previous = null;
+        int position = 0;
+        for (int i = 0; i < leafCount; i++) {
+            Leaf leaf = new Leaf();
+            int take = n / leafCount + (i < n % leafCount ? 1 : 0);
+            System.arraycopy(keys, position, leaf.keys, 0, take);
+            if (values != null)
+                System.arraycopy(values, position, leaf.values, 0, take);
+            leaf.count = take;
+            leaf.previous = previous;
+            if (previous != null)
+                previous.next = leaf;
+            previous = leaf;
+            level[i] = leaf;
+            lowestKeys[i] = keys[position];
+            levelSizes[i] = take;
+            position += take;
+        }
+
+        // Group each level under parents the same way until one node is left
+        while (level.length > 1) {
+            int parentCount = (level.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            Node[] parents = new Node[parentCount];
+            long[] parentLowest = new long[parentCount];
+            int[] parentSizes = new int[parentCount];
+            int child = 0;
+            for (int i = 0; i < parentCount; i++) {
+                Inner parent = new Inner();
+                int take = level.length / parentCount + (i < level.length % parentCount ? 1 : 0);
+                for (int j = 0; j < take; j++, child++) {
+                    parent.children[j] = level[child];
+                    parent.sizes[j] = levelSizes[child];
+                    if (j > 0)
+                        parent.keys[j - 1] = lowestKeys[child];
+                    parentSizes[i] += levelSizes[child];
+                }
+                parent.count = take;
+                parents[i] = parent;
+                parentLowest[i] = lowestKeys[child - take];
+            }
+            level = parents;
+            lowestKeys = parentLowest;
+            levelSizes = parentSizes;
+        }
+        map.root = level[0];
+        map.size = n;
+        return map;
+    }
+
+    /** Return the number of entries */
+    public int size() {
+        return size;
+    }
+
+    /** Return true if the map is empty */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Remove every entry */
+    public void clear() {
+        root = new Leaf();
+        size = 0;
+        modCount++;
+    }
+
+    /** Return true if the map has the key */
+    public boolean containsKey(long key) {
+        Leaf leaf = leafFor(key);
+        return search(leaf.keys, leaf.count, key) >= 0;
+    }
+
+    /** Return the value for a key, or null if the key is not in the map */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Leaf leaf = leafFor(key);
+        int i = search(leaf.keys, leaf.count, key);
+        return i >= 0 ? (V) leaf.values[i] : null;
+    }
+
+    /** Map a key to a value and return the value it replaced, if any */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        oldValue = null;
+        sizeChanged = false;
+        Node right = insert(root, key, value);
+        if (right != null) {
+            // The root split, so the tree grows a level
+            Inner newRoot = new Inner();
+            newRoot.children[0] = root;
+            newRoot.children[1] = right;
+            newRoot.keys[0] = promotedKey;
+            newRoot.sizes[0] = sizeOf(root);
+            newRoot.sizes[1] = sizeOf(right);
+            newRoot.count = 2;
+            root = newRoot;
+        }
+        if (sizeChanged) {
+            size++;
+            modCount++;
+        }
+        return (V) oldValue;
+    }
+
+    /** Remove a key and return its value, or null if it was not in the map */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        oldValue = null;
+        sizeChanged = false;
+        delete(root, key);
+        if (sizeChanged) {
+            size--;
+            modCount++;
+            if (root instanceof Inner && root.count == 1)
+                root = ((Inner) root).children[0]; // The tree shrinks a level
+        }
+        return (V) oldValue;
+    }
+
+    /** Return the smallest key */
+    public long firstKey() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return leftmostLeaf().keys[0];
+    }
+
+    /** Return the largest key */
+    public long lastKey() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        Node node = root;
+        while (node instanceof Inner)
+            node = ((Inner) node).children[node.count - 1];
+        return node.keys[node.count - 1];
+    }
+
+    /** Return the largest key less than or equal to key, if there is one */
+    public OptionalLong floorKey(long key) {
+        return below(key, true);
+    }
+
+    /** Return the largest key strictly less than key, if there is one */
+    public OptionalLong lowerKey(long key) {
+        return below(key, false);
+    }
+
+    /** Return the smallest key greater than or equal to key, if there is one */
+    public OptionalLong ceilingKey(long key) {
+        return above(key, true);
+    }
+
+    /** Return the smallest key strictly greater than key, if there is one */
+    public OptionalLong higherKey(long key) {
+        return above(key, false);
+    }
+
+    /** Return the number of keys less than key, which is key's index if it is present */
+    public int rank(long key) {
+        Node node = root;
+        int rank = 0;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int child = childIndex(inner, key);
+            for (int i = 0; i < child; i++)
+                rank += inner.sizes[i];
+            node = inner.children[child];
+        }
+        int i = search(node.keys, node.count, key);
+        return rank + (i >= 0 ? i : -i - 1);
+    }
+
+    /** Return the key at an index in key order (0 for the smallest) */
+    public long select(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int child = 0;
+            while (index >= inner.sizes[child])
+                index -= inner.sizes[child++];
+            node = inner.children[child];
+        }
+        return node.keys[index];
+    }
+
+    /** Return the number of keys from fromKey (inclusive) to toKey (exclusive) in O(log n) */
+    public int countRange(long fromKey, long toKey) {
+        return Math.max(0, rank(toKey) - rank(fromKey));
+    }
+
+    /** Call an action for every entry in key order */
+    public void forEach(EntryConsumer<? super V> action) {
+        scan(leftmostLeaf(), 0, false, 0, action);
+    }
+
+    /**
+     * Call an action for every entry from fromKey (inclusive) to toKey
+     * (exclusive) in key order, walking the linked leaves
+     */
+    public void forEachInRange(long fromKey, long toKey, EntryConsumer<? super V> action) {
+        Leaf leaf = leafFor(fromKey);
+        int i = search(leaf.keys, leaf.count, fromKey);
+        scan(leaf, i >= 0 ? i : -i - 1, true, toKey, action);
+    }
+
+    /** Return the keys in increasing order */
+    public long[] keys() {
+        long[] keys = new long[size];
+        int position = 0;
+        for (Leaf leaf = leftmostLeaf(); leaf != null; leaf = leaf.next) {
+            System.arraycopy(leaf.keys, 0, keys, position, leaf.count);
+            position += leaf.count;
+        }
+        return keys;
+    }
+
+    /** Return an iterator over the keys in increasing order; it supports remove */
+    public PrimitiveIterator.OfLong keyIterator() {
+        return new KeyIterator();
+    }
+
+    @Override
+    /** Return the entries as {key=value, ...} */
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (result.length() > 1)
+                result.append(", ");
+            result.append(key).append('=').append(value);
+        });
+        return result.append('}').toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scan(Leaf leaf, int i, boolean bounded, long toKey, EntryConsumer<? super V> action) {
+        int expected = modCount;
+        for (; leaf != null; leaf = leaf.next, i = 0) {
+            for (; i < leaf.count; i++) {
+                if (bounded && leaf.keys[i] >= toKey)
+                    return;
+                action.accept(leaf.keys[i], (V) leaf.values[i]);
+                if (modCount != expected)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /** Walks the leaves in key order */
+    private class KeyIterator implements PrimitiveIterator.OfLong {
+        private Leaf leaf = leftmostLeaf();
+        private int index = 0;
+        private boolean canRemove = false;
+        private long lastKey;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            if (leaf != null && index == leaf.count) {
+                leaf = leaf.next;
+                index = 0;
+            }
+            return leaf != null && index < leaf.count;
+        }
+
+        @Override
+        public long nextLong() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastKey = leaf.keys[index++];
+            canRemove = true;
+            return lastKey;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            MyLongBTreeMap.this.remove(lastKey);
+            // Removing may merge leaves, so find the place again
+            leaf = leafFor(lastKey);
+            int i = search(leaf.keys, leaf.count, lastKey);
+            index = -i - 1;
+            canRemove = false;
+            expectedModCount = modCount;
+        }
+    }
+
+    /** Return the index of key in keys[0..count), or -(insertion point) - 1 */
+    private static int search(long[] keys, int count, long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keys[mid];
+            if (midKey < key)
+                low = mid + 1;
+            else if (midKey > key)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    /** Return the index of the child whose range holds key */
+    private static int childIndex(Inner inner, long key) {
+        int i = search(inner.keys, inner.count - 1, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private Leaf leafFor(long key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    private Leaf leftmostLeaf() {
+        Node node = root;
+        while (node instanceof Inner)
+            node = ((Inner) node).children[0];
+        return (Leaf) node;
+    }
+
+    private static int sizeOf(Node node) {
+        if (node instanceof Leaf)
+            return node.count;
+        Inner inner = (Inner) node;
+        int total = 0;
+        for (int i = 0; i < inner.count; i++)
+            total += inner.sizes[i];
+        return total;
+    }
+
+    // Every key in the leaf before (or after) key's leaf is below (or above) the
+    // separator between them, so at most one step along the links is needed
+    private OptionalLong below(long key, boolean inclusive) {
+        Leaf leaf = leafFor(key);
+        int i = search(leaf.keys, leaf.count, key);
+        i = i >= 0 ? (inclusive ? i : i - 1) : -i - 2;
+        if (i < 0) {
+            leaf = leaf.previous;
+            if (leaf == null)
+                return OptionalLong.empty();
+            i = leaf.count - 1;
+        }
+        return OptionalLong.of(leaf.keys[i]);
+    }
+
+    private OptionalLong above(long key, boolean inclusive) {
+        Leaf leaf = leafFor(key);
+        int i = search(leaf.keys, leaf.count, key);
+        i = i >= 0 ? (inclusive ? i : i + 1) : -i - 1;
+        if (i == leaf.count) {
+            leaf = leaf.next;
+            i = 0;
+        }
+        return leaf == null ? OptionalLong.empty() : OptionalLong.of(leaf.keys[i]);
+    }
+
+    /** Insert below node; return the new right sibling if node split, else null */
+    private Node insert(Node node, long key, V value) {
+        if (node instanceof Leaf)
+            return insertIntoLeaf((Leaf) node, key, value);
+        Inner inner = (Inner) node;
+        int child = childIndex(inner, key);
+        Node right = insert(inner.children[child], key, value);
+        if (right == null) {
+            if (sizeChanged)
+                inner.sizes[child]++;
+            return null;
+        }
+        inner.sizes[child] = sizeOf(inner.children[child]);
+        return insertChild(inner, child + 1, promotedKey, right);
+    }
+
+    private Node insertIntoLeaf(Leaf leaf, long key, V value) {
+        int i = search(leaf.keys, leaf.count, key);
+        if (i >= 0) {
+            oldValue = leaf.values[i];
+            leaf.values[i] = value;
+            return null;
+        }
+        sizeChanged = true;
+        i = -i - 1;
+        if (leaf.count < NODE_CAPACITY) {
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+            System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.count - i);
+            leaf.keys[i] = key;
+            leaf.values[i] = value;
+            leaf.count++;
+            return null;
+        }
+
+        // Full: the upper half of the keys, with the new one in place, moves to a new leaf
+        long[] keys = new long[NODE_CAPACITY + 1];
+        Object[] values = new Object[NODE_CAPACITY + 1];
+        System.arraycopy(leaf.keys, 0, keys, 0, i);
+        System.arraycopy(leaf.values, 0, values, 0, i);
+        keys[i] = key;
+        values[i] = value;
+        System.arraycopy(leaf.keys, i, keys, i + 1, NODE_CAPACITY - i);
+        System.arraycopy(leaf.values, i, values, i + 1, NODE_CAPACITY - i);
+
+        int leftCount = (NODE_CAPACITY + 1) / 2;
+        Leaf right = new Leaf();
+        right.count = NODE_CAPACITY + 1 - leftCount;
+        System.arraycopy(keys, 0, leaf.keys, 0, leftCount);
+        System.arraycopy(values, 0, leaf.values, 0, leftCount);
+        System.arraycopy(keys, leftCount, right.keys, 0, right.count);
+        System.arraycopy(values, leftCount, right.values, 0, right.count);
+        Arrays.fill(leaf.values, leftCount, NODE_CAPACITY, null);
+        leaf.count = leftCount;
+
+        right.next = leaf.next;
+        if (right.next != null)
+            right.next.previous = right;
+        right.previous = leaf;
+        leaf.next = right;
+        promotedKey = right.keys[0];
+        return right;
+    }
+
+    /** Add child at index with separator before it; return the new right sibling if inner split */
+    private Node insertChild(Inner inner, int index, long separator, Node child) {
+        int childSize = sizeOf(child);
+        if (inner.count < NODE_CAPACITY) {
+            System.arraycopy(inner.children, index, inner.children, index + 1, inner.count - index);
+            System.arraycopy(inner.sizes, index, inner.sizes, index + 1, inner.count - index);
+            System.arraycopy(inner.keys, index - 1, inner.keys, index, inner.count - index);
+            inner.children[index] = child;
+            inner.sizes[index] = childSize;
+            inner.keys[index - 1] = separator;
+            inner.count++;
+            return null;
+        }
+
+        Node[] children = new Node[NODE_CAPACITY + 1];
+        int[] sizes = new int[NODE_CAPACITY + 1];
+        long[] keys = new long[NODE_CAPACITY];
+        System.arraycopy(inner.children, 0, children, 0, index);
+        System.arraycopy(inner.sizes, 0, sizes, 0, index);
+        children[index] = child;
+        sizes[index] = childSize;
+        System.arraycopy(inner.children, index, children, index + 1, NODE_CAPACITY - index);
+        System.arraycopy(inner.sizes, index, sizes, index + 1, NODE_CAPACITY - index);
+        System.arraycopy(inner.keys, 0, keys, 0, index - 1);
+        keys[index - 1] = separator;
+        System.arraycopy(inner.keys, index - 1, keys, index, NODE_CAPACITY - index);
+
+        // The separator between the halves moves up rather than staying in either
+        int leftCount = (NODE_CAPACITY + 1) / 2;
+        Inner right = new Inner();
+        right.count = NODE_CAPACITY + 1 - leftCount;
+        System.arraycopy(children, 0, inner.children, 0, leftCount);
+        System.arraycopy(sizes, 0, inner.sizes, 0, leftCount);
+        System.arraycopy(keys, 0, inner.keys, 0, leftCount - 1);
+        System.arraycopy(children, leftCount, right.children, 0, right.count);
+        System.arraycopy(sizes, leftCount, right.sizes, 0, right.count);
+        System.arraycopy(keys, leftCount, right.keys, 0, right.count - 1);
+        Arrays.fill(inner.children, leftCount, NODE_CAPACITY, null);
+        inner.count = leftCount;
+        promotedKey = keys[leftCount - 1];
+        return right;
+    }
+
+    /** Remove key from below node, fixing any child left under MIN_FILL */
+    private void delete(Node node, long key) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf.keys, leaf.count, key);
+            if (i < 0)
+                return;
+            oldValue = leaf.values[i];
+            sizeChanged = true;
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i - 1);
+            System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.count - i - 1);
+            leaf.count--;
+            leaf.values[leaf.count] = null;
+            return;
+        }
+        Inner inner = (Inner) node;
+        int child = childIndex(inner, key);
+        delete(inner.children[child], key);
+        if (!sizeChanged)
+            return;
+        inner.sizes[child]--;
+        // A separator equal to the removed key can stay: it still divides the children correctly
+        if (inner.children[child].count < MIN_FILL && inner.count > 1)
+            rebalance(inner, child > 0 ? child - 1 : child);
+    }
+
+    /** Merge children left and left + 1 of parent, or share their entries evenly if they don't fit in one */
+    private void rebalance(Inner parent, int left) {
+        Node a = parent.children[left];
+        Node b = parent.children[left + 1];
+        int total = a.count + b.count;
+        if (a instanceof Leaf) {
+            Leaf first = (Leaf) a;
+            Leaf second = (Leaf) b;
+            if (total <= NODE_CAPACITY) {
+                System.arraycopy(second.keys, 0, first.keys, first.count, second.count);
+                System.arraycopy(second.values, 0, first.values, first.count, second.count);
+                first.count = total;
+                first.next = second.next;
+                if (second.next != null)
+                    second.next.previous = first;
+                removeChild(parent, left + 1);
+                parent.sizes[left] = total;
+                return;
+            }
+            int leftCount = total / 2;
+            if (first.count > leftCount) {
+                int move = first.count - leftCount;
+                System.arraycopy(second.keys, 0, second.keys, move, second.count);
+                System.arraycopy(second.values, 0, second.values, move, second.count);
+                System.arraycopy(first.keys, leftCount, second.keys, 0, move);
+                System.arraycopy(first.values, leftCount, second.values, 0, move);
+                Arrays.fill(first.values, leftCount, first.count, null);
+            } else {
+                int move = leftCount - first.count;
+                System.arraycopy(second.keys, 0, first.keys, first.count, move);
+                System.arraycopy(second.values, 0, first.values, first.count, move);
+                System.arraycopy(second.keys, move, second.keys, 0, second.count - move);
+                System.arraycopy(second.values, move, second.values, 0, second.count - move);
+                Arrays.fill(second.values, second.count - move, second.count, null);
+            }
+            first.count = leftCount;
+            second.count = total - leftCount;
+            parent.keys[left] = second.keys[0];
+            parent.sizes[left] = first.count;
+            parent.sizes[left + 1] = second.count;
+            return;
+        }
+
+        // Inner nodes: line up both nodes' children with the parent's separator between them
+        Inner first = (Inner) a;
+        Inner second = (Inner) b;
+        Node[] children = new Node[total];
+        int[] sizes = new int[total];
+        long[] keys = new long[total - 1];
+        System.arraycopy(first.children, 0, children, 0, first.count);
+        System.arraycopy(second.children, 0, children, first.count, second.count);
+        System.arraycopy(first.sizes, 0, sizes, 0, first.count);
+        System.arraycopy(second.sizes, 0, sizes, first.count, second.count);
+        System.arraycopy(first.keys, 0, keys, 0, first.count - 1);
+        keys[first.count - 1] = parent.keys[left];
+        System.arraycopy(second.keys, 0, keys, first.count, second.count - 1);
+
+        int leftCount = total <= NODE_CAPACITY ? total : total / 2;
+        Arrays.fill(first.children, null);
+        System.arraycopy(children, 0, first.children, 0, leftCount);
+        System.arraycopy(sizes, 0, first.sizes, 0, leftCount);
+        System.arraycopy(keys, 0, first.keys, 0, leftCount - 1);
+        first.count = leftCount;
+        if (leftCount == total) {
+            removeChild(parent, left + 1);
+            parent.sizes[left] = sizeOf(first);
+            return;
+        }
+        Arrays.fill(second.children, null);
+        System.arraycopy(children, leftCount, second.children, 0, total - leftCount);
+        System.arraycopy(sizes, leftCount, second.sizes, 0, total - leftCount);
+        System.arraycopy(keys, leftCount, second.keys, 0, total - leftCount - 1);
+        second.count = total - leftCount;
+        parent.keys[left] = keys[leftCount - 1];
+        parent.sizes[left] = sizeOf(first);
+        parent.sizes[left + 1] = sizeOf(second);
+    }
+
+    /** Remove the child at index (index > 0) and the separator before it */
+    private static void removeChild(Inner parent, int index) {
+        System.arraycopy(parent.children, index + 1, parent.children, index, parent.count - index - 1);
+        System.arraycopy(parent.sizes, index + 1, parent.sizes, index, parent.count - index - 1);
+        System.arraycopy(parent.keys, index, parent.keys, index - 1, parent.count - index - 1);
+        parent.count--;
+        parent.children[parent.count] = null;
+    }
+
+    /** Compare lookups against MyBTreeMap<Long, ...> and java.util.TreeMap<Long, ...> */
+    public static void main(String[] args) {
+        final int n = 1_000_000;
+        long[] keys = new long[n];
+        Long[] boxedKeys = new Long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i * 3L;
+            boxedKeys[i] = keys[i];
+        }
+
+        long startTime = System.nanoTime();
+        MyLongBTreeMap<String> map = fromSorted(keys, null);
+        System.out.println("Bulk loaded " + map.size() + " long keys in "
+            + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        MyBTreeMap<Long, String> boxedMap = MyBTreeMap.fromSorted(boxedKeys, null);
+        TreeMap<Long, String> treeMap = new TreeMap<>(boxedMap);
+
+        Random random = new Random(42);
+        long[] probes = new long[2_000_000];
+        for (int i = 0; i < probes.length; i++)
+            probes[i] = random.nextInt(3 * n);
+        for (int round = 0; round < 3; round++) {
+            startTime = System.nanoTime();
+            int found = 0;
+            for (long probe : probes)
+                if (map.containsKey(probe)) found++;
+            int boxedFound = 0;
+            long primitiveTime = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (long probe : probes)
+                if (boxedMap.containsKey(probe)) boxedFound++;
+            long boxedTime = System.nanoTime() - startTime;
+            int treeFound = 0;
+            startTime = System.nanoTime();
+            for (long probe : probes)
+                if (treeMap.containsKey(probe)) treeFound++;
+            long treeMapTime = System.nanoTime() - startTime;
+            System.out.println(probes.length + " lookups: long keys " + primitiveTime / 1_000_000
+                + " ms (" + found + " found), Long keys " + boxedTime / 1_000_000 + " ms (" + boxedFound
+                + " found), TreeMap " + treeMapTime / 1_000_000 + " ms (" + treeFound + " found)");
+        }
+
+        System.out.println("floorKey(1000) = " + map.floorKey(1000) + ", higherKey(999) = " + map.higherKey(999)
+            + ", lowerKey(0) = " + map.lowerKey(0));
+        System.out.println("rank(3000) = " + map.rank(3000) + ", select(10) = " + map.select(10)
+            + ", keys in [0, 300): " + map.countRange(0, 300));
+
+        PrimitiveIterator.OfLong iterator = map.keyIterator();
+        while (iterator.hasNext())
+            if (iterator.nextLong() % 2 == 0)
+                iterator.remove();
+        System.out.println("After removing even keys: " + map.size() + " left, first " + map.firstKey()
+            + ", last " + map.lastKey());
+    }
+}
@@ -30,10 +30,29 @@
  */
 
  import java.util.*;
+ import java.util.concurrent.ForkJoinPool;
+ import java.util.concurrent.RecursiveTask;
+ import java.util.function.Function;
  import java.util.function.Predicate;
+ import java.util.function.ToDoubleFunction;
+ import java.util.stream.Collector;
  
  public class GenericDataAnalyzer<T extends Comparable<T>> {
+     // summarize() splits the data into at most this many chunks of at least
+     // SUMMARY_CHUNK elements; fewer, larger chunks mean fewer frequency tables to merge
+     private static final int SUMMARY_SPLITS = 16;
+     private static final int SUMMARY_CHUNK = 1 << 13;
+     
      private List<T> data;
+     // Running aggregates, kept up to date on every change once incremental mode is on
+     private RunningStats<T> stats;
+     // Fixed-memory sketches fed on every add, for streams too large for exact counts
+     private StreamSketches<T> sketches;
+     private KllSketch<T> quantileSketch;
+     // Bumped on every change, so cached query results and the sorted index know when they are stale
+     private long version;
+     private final Map<Object, CachedResult> queryCache = new HashMap<>();
+     private SortedIndex<T> sortedIndex;
      
      // Constructor
      public GenericDataAnalyzer() {
@@ -49,7 +68,139 @@
      public void addElement(T element) {
          if (element != null) {
              data.add(element);
+             version++;
+             if (stats != null) {
+                 stats.add(element);
+             }
+             if (sketches != null) {
+                 sketches.accept(element);
+             }
+             if (quantileSketch != null) {
+                 quantileSketch.add(element);
+             }
+         }
+     }
+     
+     // Remove one occurrence of an element, returning true if it was present
+     public boolean removeElement(T element) {
+         if (element == null || !data.remove(element)) {
+             return false;
+         }
+         version++;
+         if (stats != null) {
+             stats.remove(element);
+         }
+         return true;
+     }
+     
+     // Switch to incremental mode: one pass over the current data builds the running
+     // aggregates, and from then on findMin, findMax and findMostFrequent answer
+     // without rescanning
+     public void enableIncremental() {
+         if (stats == null) {
+             RunningStats<T> built = new RunningStats<>();
+             for (T item : data) {
+                 built.add(item);
+             }
+             stats = built;
+         }
+     }
+     
+     // Check whether incremental mode is on
+     public boolean isIncremental() {
+         return stats != null;
+     }
+     
+     // Feed the current data and every later addition to fixed-memory sketches, which
+     // estimate the top items, item frequencies and the distinct count without an exact
+     // frequency table. Sketches only count additions; removals are not subtracted.
+     public void enableSketches(StreamSketches<T> sketches) {
+         for (T item : data) {
+             if (item != null) {
+                 sketches.accept(item);
+             }
+         }
+         this.sketches = sketches;
+     }
+     
+     // Get the sketches fed by this analyzer, or null if none were enabled
+     public StreamSketches<T> getSketches() {
+         return sketches;
+     }
+     
+     // Feed the current data and every later addition to a quantile sketch, so
+     // approximateQuantile answers in microseconds whatever the size of the data.
+     // Like the other sketches it counts additions only.
+     public void enableQuantileSketch(KllSketch<T> sketch) {
+         for (T item : data) {
+             sketch.add(item);
+         }
+         this.quantileSketch = sketch;
+     }
+     
+     // Estimate a quantile from the quantile sketch (see KllSketch for the error bound)
+     public T approximateQuantile(double q) {
+         if (quantileSketch == null) {
+             throw new IllegalStateException("No quantile sketch; call enableQuantileSketch first");
+         }
+         return quantileSketch.quantile(q);
+     }
+     
+     // Exact quantile: the element at rank ceil(q * n) in sorted order, so 0.5 gives the
+     // (lower) median and 1.0 the maximum. Found by selection on a copy of the data in
+     // expected O(n) time, without sorting it.
+     public T quantile(double q) {
+         if (q < 0 || q > 1 || Double.isNaN(q)) {
+             throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+         }
+         Object[] items = data.stream().filter(Objects::nonNull).toArray();
+         if (items.length == 0) {
+             return null;
+         }
+         int rank = (int) Math.max(0, Math.ceil(q * items.length) - 1);
+         return select(items, rank);
+     }
+     
+     // Quickselect: partition around a median-of-three pivot and keep only the side
+     // holding the wanted position
+     @SuppressWarnings("unchecked")
+     private T select(Object[] items, int rank) {
+         int low = 0;
+         int high = items.length - 1;
+         while (low < high) {
+             int middle = (low + high) >>> 1;
+             T a = (T) items[low];
+             T b = (T) items[middle];
+             T c = (T) items[high];
+             T pivot = a.compareTo(b) < 0
+                 ? (b.compareTo(c) < 0 ? b : (a.compareTo(c) < 0 ? c : a))
+                 : (a.compareTo(c) < 0 ? a : (b.compareTo(c) < 0 ? c : b));
+             int i = low;
+             int j = high;
+             while (i <= j) {
+                 while (((T) items[i]).compareTo(pivot) < 0) {
+                     i++;
+                 }
+                 while (((T) items[j]).compareTo(pivot) > 0) {
+                     j--;
+                 }
+                 if (i <= j) {
+                     Object swap = items[i];
+                     items[i] = items[j];
+                     items[j] = swap;
+                     i++;
+                     j--;
+                 }
+             }
+             if (rank <= j) {
+                 high = j;
+             } else if (rank >= i) {
+                 low = i;
+             } else {
+                 break; // Between j and i everything equals the pivot
+             }
          }
+         return (T) items[rank];
      }
      
      // Add multiple elements
@@ -61,6 +212,9 @@
      
      // Generic method to find minimum value
      public T findMin() {
+         if (stats != null) {
+             return stats.min();
+         }
          if (data.isEmpty()) {
              return null;
          }
@@ -76,6 +230,9 @@
      
      // Generic method to find maximum value
      public T findMax() {
+         if (stats != null) {
+             return stats.max();
+         }
          if (data.isEmpty()) {
              return null;
          }
@@ -91,21 +248,23 @@
      
      // Generic method to find most frequent element
      public T findMostFrequent() {
+         if (stats != null) {
+             return stats.mostFrequent();
+         }
          if (data.isEmpty()) {
              return null;
          }
          
-         Map<T, Integer> frequencyMap = new HashMap<>();
-         for (T item : data) {
-             frequencyMap.put(item, frequencyMap.getOrDefault(item, 0) + 1);
-         }
-         
+         // Counts are updated in place, and the mode is tracked as they grow,
+         // so no pass over the table is needed. Ties go to the smallest, as in summarize()
+         ObjectIntHashMap<T> frequency = new ObjectIntHashMap<>();
          T mostFrequent = null;
          int maxFrequency = 0;
-         for (Map.Entry<T, Integer> entry : frequencyMap.entrySet()) {
-             if (entry.getValue() > maxFrequency) {
-                 maxFrequency = entry.getValue();
-                 mostFrequent = entry.getKey();
+         for (T item : data) {
+             int count = frequency.increment(item, 1);
+             if (count > maxFrequency || (count == maxFrequency && item.compareTo(mostFrequent) < 0)) {
+                 maxFrequency = count;
+                 mostFrequent = item;
              }
          }
          
@@ -123,11 +282,286 @@
          return filtered;
      }
      
+     // Filter and transform in one pass, without a list between the two steps
+     public <R, S> List<S> filterAndTransform(List<R> inputData, Predicate<? super R> condition,
+             Function<? super R, ? extends S> transform) {
+         List<S> results = new ArrayList<>();
+         for (R item : inputData) {
+             if (item != null && condition.test(item)) {
+                 results.add(transform.apply(item));
+             }
+         }
+         return results;
+     }
+     
+     // Start a lazy query over all the data. Nothing runs until a terminal method such
+     // as toList() or count() is called, and then filter, map and limit steps run
+     // together in a single pass that stops as soon as the answer is known.
+     public Query<T> query() {
+         return new Query<>(null, null, Function.identity());
+     }
+     
+     // Start a query over the elements from low (inclusive) to high (exclusive); either
+     // bound may be null. With a sorted index only the matching elements are visited.
+     public Query<T> range(T low, T high) {
+         return new Query<>(low, high, Function.identity());
+     }
+     
+     // Keep a sorted index of the data for range queries. It is rebuilt (O(n log n)) by
+     // the first range query after a change, so it suits data changed in batches.
+     public void enableSortedIndex() {
+         if (sortedIndex == null) {
+             sortedIndex = new SortedIndex<>();
+         }
+     }
+     
+     // Run a query, or return its result from the last run if nothing has changed since.
+     // Queries are told apart by key, since lambdas can't be compared, so the same key
+     // must always be used with the same query.
+     @SuppressWarnings("unchecked")
+     public <V> V cachedQuery(Object key, Function<Query<T>, V> query) {
+         CachedResult cached = queryCache.get(key);
+         if (cached != null && cached.version == version) {
+             return (V) cached.value;
+         }
+         V value = query.apply(query());
+         queryCache.put(key, new CachedResult(version, value));
+         return value;
+     }
+     
+     // Receives the elements of a query one at a time; returns false once it wants no more
+     private interface Sink<E> {
+         boolean accept(E item);
+     }
+     
+     // A lazy pipeline over the analyzer's elements. Each step returns a new query and
+     // leaves this one unchanged, so a query can be kept and run again. The steps are
+     // kept as one function that wraps the final sink in every step's logic, which is
+     // what lets a whole pipeline run as a single loop.
+     public final class Query<R> {
+         private final T low;
+         private final T high;
+         private final Function<Sink<R>, Sink<T>> stages;
+         
+         private Query(T low, T high, Function<Sink<R>, Sink<T>> stages) {
+             this.low = low;
+             this.high = high;
+             this.stages = stages;
+         }
+         
+         // Keep the elements that pass a test
+         public Query<R> filter(Predicate<? super R> condition) {
+             return then(next -> item -> !condition.test(item) || next.accept(item));
+         }
+         
+         // Replace each element with the result of a function
+         public <S> Query<S> map(Function<? super R, ? extends S> transform) {
+             return then(next -> item -> next.accept(transform.apply(item)));
+         }
+         
+         // Stop after the first n elements
+         public Query<R> limit(long n) {
+             if (n < 0) {
+                 throw new IllegalArgumentException("Limit must not be negative: " + n);
+             }
+             return then(next -> {
+                 long[] remaining = {n};
+                 return item -> remaining[0]-- > 0 && next.accept(item) && remaining[0] > 0;
+             });
+         }
+         
+         // Collect the results into a read-only list
+         public List<R> toList() {
+             List<R> results = new ArrayList<>();
+             run(item -> results.add(item));
+             return Collections.unmodifiableList(results);
+         }
+         
+         public long count() {
+             long[] count = {0};
+             run(item -> {
+                 count[0]++;
+                 return true;
+             });
+             return count[0];
+         }
+         
+         // The first result, or null if there are none
+         public R first() {
+             List<R> found = new ArrayList<>(1);
+             run(item -> {
+                 found.add(item);
+                 return false;
+             });
+             return found.isEmpty() ? null : found.get(0);
+         }
+         
+         public boolean anyMatch(Predicate<? super R> condition) {
+             boolean[] found = {false};
+             run(item -> !(found[0] = condition.test(item)));
+             return found[0];
+         }
+         
+         public double sum(ToDoubleFunction<? super R> value) {
+             double[] sum = {0.0};
+             run(item -> {
+                 sum[0] += value.applyAsDouble(item);
+                 return true;
+             });
+             return sum[0];
+         }
+         
+         // Average of a value over the results, or 0.0 if there are none
+         public double average(ToDoubleFunction<? super R> value) {
+             double[] totals = {0.0, 0.0};
+             run(item -> {
+                 totals[0] += value.applyAsDouble(item);
+                 totals[1]++;
+                 return true;
+             });
+             return totals[1] > 0 ? totals[0] / totals[1] : 0.0;
+         }
+         
+         // The smallest result by a comparator, or null if there are none; ties keep the first
+         public R min(Comparator<? super R> order) {
+             return best(order);
+         }
+         
+         // The largest result by a comparator, or null if there are none; ties keep the first
+         public R max(Comparator<? super R> order) {
+             return best(order.reversed());
+         }
+         
+         // Any other aggregate, such as Collectors.groupingBy or Collectors.joining
+         public <A, V> V collect(Collector<? super R, A, V> collector) {
+             A container = collector.supplier().get();
+             run(item -> {
+                 collector.accumulator().accept(container, item);
+                 return true;
+             });
+             return collector.finisher().apply(container);
+         }
+         
+         private R best(Comparator<? super R> order) {
+             List<R> best = new ArrayList<>(1);
+             run(item -> {
+                 if (best.isEmpty()) {
+                     best.add(item);
+                 } else if (order.compare(item, best.get(0)) < 0) {
+                     best.set(0, item);
+                 }
+                 return true;
+             });
+             return best.isEmpty() ? null : best.get(0);
+         }
+         
+         private <S> Query<S> then(Function<Sink<S>, Sink<R>> stage) {
+             return new Query<>(low, high, stages.compose(stage));
+         }
+         
+         // Push the source elements through the pipeline until it or the data runs out.
+         // Elements always arrive in data order, whether or not the index is used.
+         private void run(Sink<R> terminal) {
+             Sink<T> pipeline = stages.apply(terminal);
+             boolean ranged = low != null || high != null;
+             if (ranged && sortedIndex != null) {
+                 int[] positions = sortedIndex.positionsBetween(data, version, low, high);
+                 if (positions != null) {
+                     for (int position : positions) {
+                         if (!pipeline.accept(data.get(position))) {
+                             return;
+                         }
+                     }
+                     return;
+                 }
+             }
+             for (T item : data) {
+                 if (item != null && (!ranged || inRange(item)) && !pipeline.accept(item)) {
+                     return;
+                 }
+             }
+         }
+         
+         private boolean inRange(T item) {
+             return (low == null || item.compareTo(low) >= 0) && (high == null || item.compareTo(high) < 0);
+         }
+     }
+     
+     // The data's positions in element order, for answering range queries by binary search
+     private static final class SortedIndex<T extends Comparable<T>> {
+         private Object[] values = new Object[0];
+         private int[] positions = new int[0];
+         private long builtAt = -1;
+         
+         // Positions of the elements in [low, high) in data order, or null when so many
+         // match that a plain scan is cheaper than sorting their positions
+         int[] positionsBetween(List<T> data, long version, T low, T high) {
+             if (builtAt != version) {
+                 build(data);
+                 builtAt = version;
+             }
+             int from = low == null ? 0 : lowerBound(low);
+             int to = high == null ? values.length : lowerBound(high);
+             if (to - from > data.size() / 4) {
+                 return null;
+             }
+             int[] matches = Arrays.copyOfRange(positions, from, Math.max(from, to));
+             Arrays.sort(matches);
+             return matches;
+         }
+         
+         private void build(List<T> data) {
+             List<Integer> order = new ArrayList<>(data.size());
+             for (int i = 0; i < data.size(); i++) {
+                 if (data.get(i) != null) {
+                     order.add(i);
+                 }
+             }
+             order.sort((a, b) -> data.get(a).compareTo(data.get(b)));
+             values = new Object[order.size()];
+             positions = new int[order.size()];
+             for (int i = 0; i < values.length; i++) {
+                 positions[i] = order.get(i);
+                 values[i] = data.get(positions[i]);
+             }
+         }
+         
+         // Index of the first value not less than the key
+         @SuppressWarnings("unchecked")
+         private int lowerBound(T key) {
+             int low = 0;
+             int high = values.length;
+             while (low < high) {
+                 int middle = (low + high) >>> 1;
+                 if (((T) values[middle]).compareTo(key) < 0) {
+                     low = middle + 1;
+                 } else {
+                     high = middle;
+                 }
+             }
+             return low;
+         }
+     }
+     
+     private static final class CachedResult {
+         private final long version;
+         private final Object value;
+         
+         CachedResult(long version, Object value) {
+             this.version = version;
+             this.value = value;
+         }
+     }
+     
      // Method specific to numeric types - calculate average
      public static <N extends Number> double calculateAverage(List<N> numbers) {
          if (numbers == null || numbers.isEmpty()) {
              return 0.0;
          }
+         // A primitive column averages its array directly, with no boxing or virtual calls
+         if (numbers instanceof NumericDataAnalyzer.ColumnView) {
+             return ((NumericDataAnalyzer.ColumnView<?>) numbers).analyzer.average();
+         }
          
          double sum = 0.0;
          int count = 0;
@@ -141,9 +575,220 @@
          return count > 0 ? sum / count : 0.0;
      }
      
-     // Get all data
+     // Number of times an element occurs (O(1) in incremental mode)
+     public int frequencyOf(T element) {
+         if (stats != null) {
+             return stats.frequencyOf(element);
+         }
+         return Collections.frequency(data, element);
+     }
+     
+     // Sum of the numeric elements (O(1) in incremental mode)
+     public double sum() {
+         if (stats != null) {
+             return stats.sum();
+         }
+         double sum = 0.0;
+         for (T item : data) {
+             if (item instanceof Number) {
+                 sum += ((Number) item).doubleValue();
+             }
+         }
+         return sum;
+     }
+     
+     // Average of the numeric elements, or 0.0 if there are none (O(1) in incremental mode)
+     public double average() {
+         if (stats != null) {
+             return stats.average();
+         }
+         long count = 0;
+         for (T item : data) {
+             if (item instanceof Number) {
+                 count++;
+             }
+         }
+         return count > 0 ? sum() / count : 0.0;
+     }
+     
+     // Compute count, min, max, sum, average and the most frequent element in one pass.
+     // Large data is split across the fork-join pool. The chunks and the order they are
+     // combined in depend only on the size of the data, so the result (including the
+     // floating-point sum) is the same on every run, whatever the number of threads.
+     public Summary<T> summarize() {
+         if (data.size() <= SUMMARY_CHUNK) {
+             return Summary.of(data, 0, data.size());
+         }
+         int chunk = Math.max(SUMMARY_CHUNK, (data.size() + SUMMARY_SPLITS - 1) / SUMMARY_SPLITS);
+         return ForkJoinPool.commonPool().invoke(new SummaryTask<>(data, 0, data.size(), chunk));
+     }
+     
+     // Statistics gathered by summarize(). Summaries of different parts of a data set
+     // can be merged, for example when the parts are loaded separately.
+     public static final class Summary<T extends Comparable<T>> {
+         private long count;
+         private T min;
+         private T max;
+         private ObjectIntHashMap<T> frequency = new ObjectIntHashMap<>();
+         private T mostFrequent;
+         private int maxFrequency;
+         private long numericCount;
+         private double sum;
+         // Low-order bits lost from sum, kept to make long sums accurate (Neumaier summation)
+         private double sumCompensation;
+         
+         // Summarize the elements in [from, to) of a list
+         static <T extends Comparable<T>> Summary<T> of(List<T> items, int from, int to) {
+             Summary<T> summary = new Summary<>();
+             for (int i = from; i < to; i++) {
+                 summary.accept(items.get(i));
+             }
+             return summary;
+         }
+         
+         // Add one element
+         public void accept(T item) {
+             if (item == null) {
+                 return;
+             }
+             count++;
+             if (min == null || item.compareTo(min) < 0) {
+                 min = item;
+             }
+             if (max == null || item.compareTo(max) > 0) {
+                 max = item;
+             }
+             offerMode(item, frequency.increment(item, 1));
+             if (item instanceof Number) {
+                 addToSum(((Number) item).doubleValue());
+                 numericCount++;
+             }
+         }
+         
+         // Combine with a summary of elements that come after this one's; returns the result
+         public Summary<T> merge(Summary<T> later) {
+             count += later.count;
+             // Ties keep the earlier element, as a single pass would
+             if (min == null || (later.min != null && later.min.compareTo(min) < 0)) {
+                 min = later.min;
+             }
+             if (max == null || (later.max != null && later.max.compareTo(max) > 0)) {
+                 max = later.max;
+             }
+             // Fold the smaller table into the larger; only keys that change can become the mode
+             ObjectIntHashMap<T> larger = frequency;
+             ObjectIntHashMap<T> smaller = later.frequency;
+             T largerMode = mostFrequent;
+             if (smaller.size() > larger.size()) {
+                 larger = later.frequency;
+                 smaller = frequency;
+                 largerMode = later.mostFrequent;
+             }
+             frequency = larger;
+             mostFrequent = null;
+             maxFrequency = 0;
+             if (largerMode != null) {
+                 offerMode(largerMode, larger.getOrDefault(largerMode, 0));
+             }
+             smaller.forEach((item, itemCount) -> offerMode(item, frequency.increment(item, itemCount)));
+             if (largerMode != null) {
+                 offerMode(largerMode, larger.getOrDefault(largerMode, 0));
+             }
+             addToSum(later.sum);
+             sumCompensation += later.sumCompensation;
+             numericCount += later.numericCount;
+             return this;
+         }
+         
+         public long getCount() {
+             return count;
+         }
+         
+         public T getMin() {
+             return min;
+         }
+         
+         public T getMax() {
+             return max;
+         }
+         
+         // The most frequent element; ties go to the smallest
+         public T getMostFrequent() {
+             return mostFrequent;
+         }
+         
+         public int getMostFrequentCount() {
+             return maxFrequency;
+         }
+         
+         // Sum of the numeric elements
+         public double getSum() {
+             return sum + sumCompensation;
+         }
+         
+         // Average of the numeric elements, or 0.0 if there are none
+         public double getAverage() {
+             return numericCount > 0 ? getSum() / numericCount : 0.0;
+         }
+         
+         private void offerMode(T item, int itemCount) {
+             if (itemCount > maxFrequency
+                     || (itemCount == maxFrequency && item.compareTo(mostFrequent) < 0)) {
+                 maxFrequency = itemCount;
+                 mostFrequent = item;
+             }
+         }
+         
+         private void addToSum(double value) {
+             double total = sum + value;
+             if (Math.abs(sum) >= Math.abs(value)) {
+                 sumCompensation += (sum - total) + value;
+             } else {
+                 sumCompensation += (value - total) + sum;
+             }
+             sum = total;
+         }
+         
+         @Override
+         public String toString() {
+             return "Summary{count=" + count + ", min=" + min + ", max=" + max + ", mostFrequent=" + mostFrequent
+                 + " (" + maxFrequency + " times), sum=" + getSum() + ", average=" + getAverage() + "}";
+         }
+     }
+     
+     // Summarizes a range of whole chunks, splitting it in half until one chunk is left
+     private static final class SummaryTask<T extends Comparable<T>> extends RecursiveTask<Summary<T>> {
+         private static final long serialVersionUID = 1L;
+         
+         private final List<T> items;
+         private final int from;
+         private final int to;
+         private final int chunk;
+         
+         SummaryTask(List<T> items, int from, int to, int chunk) {
+             this.items = items;
+             this.from = from;
+             this.to = to;
+             this.chunk = chunk;
+         }
+         
+         @Override
+         protected Summary<T> compute() {
+             int chunks = (to - from + chunk - 1) / chunk;
+             if (chunks <= 1) {
+                 return Summary.of(items, from, to);
+             }
+             int middle = from + (chunks / 2) * chunk;
+             SummaryTask<T> right = new SummaryTask<>(items, middle, to, chunk);
+             right.fork();
+             Summary<T> left = new SummaryTask<>(items, from, middle, chunk).compute();
+             return left.merge(right.join());
+         }
+     }
+     
+     // Get all data as a read-only view; it is not copied, so later changes show through
      public List<T> getData() {
-         return new ArrayList<>(data);
+         return Collections.unmodifiableList(data);
      }
      
      // Get size
@@ -154,6 +799,16 @@
      // Clear all data
      public void clear() {
          data.clear();
+         version++;
+         if (stats != null) {
+             stats = new RunningStats<>();
+         }
+         if (sketches != null) {
+             sketches.clear();
+         }
+         if (quantileSketch != null) {
+             quantileSketch = new KllSketch<>(quantileSketch.getK());
+         }
      }
      
      @Override
@@ -170,10 +825,12 @@
          intAnalyzer.addElements(45, 12, 78, 23, 45, 67, 12, 89, 34);
          
          System.out.println("Integer data: " + intAnalyzer.getData());
-         System.out.println("Minimum: " + intAnalyzer.findMin());
-         System.out.println("Maximum: " + intAnalyzer.findMax());
-         System.out.println("Most frequent: " + intAnalyzer.findMostFrequent());
-         System.out.println("Average: " + calculateAverage(intAnalyzer.getData()));
+         // One pass computes every statistic
+         Summary<Integer> intSummary = intAnalyzer.summarize();
+         System.out.println("Minimum: " + intSummary.getMin());
+         System.out.println("Maximum: " + intSummary.getMax());
+         System.out.println("Most frequent: " + intSummary.getMostFrequent());
+         System.out.println("Average: " + intSummary.getAverage());
          
          // Test generic filter method with integers
          List<Integer> evenNumbers = intAnalyzer.filterAndTransform(
@@ -234,6 +891,151 @@
          System.out.println("Minimum (by name): " + personAnalyzer.findMin());
          System.out.println("Maximum (by name): " + personAnalyzer.findMax());
          System.out.println("Most frequent: " + personAnalyzer.findMostFrequent());
+         
+         System.out.println("\n=== Testing Incremental Mode ===");
+         
+         // Queries after every insert no longer rescan the data
+         GenericDataAnalyzer<Integer> liveAnalyzer = new GenericDataAnalyzer<>();
+         liveAnalyzer.enableIncremental();
+         Random random = new Random(42);
+         long startTime = System.nanoTime();
+         for (int i = 0; i < 100_000; i++) {
+             liveAnalyzer.addElement(random.nextInt(1000));
+             liveAnalyzer.findMin();
+             liveAnalyzer.findMax();
+             liveAnalyzer.findMostFrequent();
+         }
+         long elapsed = System.nanoTime() - startTime;
+         System.out.println("100000 inserts, each followed by min/max/mode queries: " + elapsed / 1_000_000 + " ms");
+         System.out.println("Minimum: " + liveAnalyzer.findMin() + ", maximum: " + liveAnalyzer.findMax()
+             + ", average: " + liveAnalyzer.average());
+         
+         // Removals keep the aggregates correct
+         Integer mode = liveAnalyzer.findMostFrequent();
+         System.out.println("Most frequent: " + mode + " (" + liveAnalyzer.frequencyOf(mode) + " times)");
+         while (liveAnalyzer.findMin() != null && liveAnalyzer.findMin() <= 10) {
+             liveAnalyzer.removeElement(liveAnalyzer.findMin());
+         }
+         System.out.println("After removing every value up to 10, minimum: " + liveAnalyzer.findMin());
+         
+         // Both modes break ties toward the smallest element, through adds and removes
+         GenericDataAnalyzer<Integer> plainAnalyzer = new GenericDataAnalyzer<>();
+         GenericDataAnalyzer<Integer> tiedAnalyzer = new GenericDataAnalyzer<>();
+         tiedAnalyzer.enableIncremental();
+         int disagreements = 0;
+         for (int i = 0; i < 20_000; i++) {
+             Integer value = random.nextInt(20);
+             if (random.nextInt(3) == 0) {
+                 plainAnalyzer.removeElement(value);
+                 tiedAnalyzer.removeElement(value);
+             } else {
+                 plainAnalyzer.addElement(value);
+                 tiedAnalyzer.addElement(value);
+             }
+             if (!Objects.equals(plainAnalyzer.findMostFrequent(), tiedAnalyzer.findMostFrequent())) {
+                 disagreements++;
+             }
+         }
+         GenericDataAnalyzer<Integer> pairAnalyzer = new GenericDataAnalyzer<>();
+         pairAnalyzer.addElement(5);
+         pairAnalyzer.addElement(3);
+         Integer plainMode = pairAnalyzer.findMostFrequent();
+         pairAnalyzer.enableIncremental();
+         System.out.println("Mode of [5, 3]: " + plainMode + " plain, " + pairAnalyzer.findMostFrequent()
+             + " incremental; plain and incremental modes disagreed " + disagreements + " times in 20000 steps");
+         
+         System.out.println("\n=== Testing Single-Pass Summary ===");
+         
+         // Four separate passes (plus a copy of the data) against one parallel pass
+         GenericDataAnalyzer<Integer> bigAnalyzer = new GenericDataAnalyzer<>();
+         for (int i = 0; i < 5_000_000; i++) {
+             bigAnalyzer.addElement(random.nextInt(100_000));
+         }
+         startTime = System.nanoTime();
+         bigAnalyzer.findMin();
+         bigAnalyzer.findMax();
+         bigAnalyzer.findMostFrequent();
+         calculateAverage(bigAnalyzer.getData());
+         long separate = System.nanoTime() - startTime;
+         startTime = System.nanoTime();
+         Summary<Integer> bigSummary = bigAnalyzer.summarize();
+         long fused = System.nanoTime() - startTime;
+         System.out.println(bigSummary);
+         System.out.println("Separate passes: " + separate / 1_000_000 + " ms, summarize(): " + fused / 1_000_000 + " ms");
+         
+         System.out.println("\n=== Testing Sketches ===");
+         
+         // Estimates from about a megabyte of sketches, whatever the number of distinct values
+         bigAnalyzer.enableSketches(new StreamSketches<>());
+         StreamSketches<Integer> bigSketches = bigAnalyzer.getSketches();
+         System.out.println("Distinct values: about " + bigSketches.estimateDistinct());
+         System.out.println("Frequency of 42: about " + bigSketches.estimateFrequency(42)
+             + " (exactly " + bigAnalyzer.frequencyOf(42) + ")");
+         
+         System.out.println("\n=== Testing Quantiles ===");
+         
+         System.out.println("Integer data median: " + intAnalyzer.quantile(0.5));
+         startTime = System.nanoTime();
+         Integer exactP99 = bigAnalyzer.quantile(0.99);
+         long selectTime = System.nanoTime() - startTime;
+         bigAnalyzer.enableQuantileSketch(new KllSketch<>());
+         bigAnalyzer.approximateQuantile(0.5);
+         startTime = System.nanoTime();
+         Integer approximateP99 = bigAnalyzer.approximateQuantile(0.99);
+         long sketchTime = System.nanoTime() - startTime;
+         System.out.println("p99 by selection: " + exactP99 + " in " + selectTime / 1_000_000 + " ms");
+         System.out.println("p99 from the sketch: " + approximateP99 + " in " + sketchTime / 1_000 + " us");
+         
+         System.out.println("\n=== Testing Query Pipelines ===");
+         
+         List<Integer> tensOfEvens = intAnalyzer.query()
+             .filter(num -> num % 2 == 0)
+             .map(num -> num * 10)
+             .toList();
+         System.out.println("Even numbers times ten: " + tensOfEvens);
+         System.out.println("First word longer than 5 characters: "
+             + stringAnalyzer.query().filter(word -> word.length() > 5).first());
+         
+         // Two chained filters copy the data twice; the fused pipeline stops after 1000 matches
+         startTime = System.nanoTime();
+         List<Integer> chained = bigAnalyzer.filterAndTransform(
+             bigAnalyzer.filterAndTransform(bigAnalyzer.getData(), num -> num % 3 == 0),
+             num -> num % 7 == 0);
+         List<Integer> firstChained = chained.subList(0, 1000);
+         long eager = System.nanoTime() - startTime;
+         startTime = System.nanoTime();
+         List<Integer> firstFused = bigAnalyzer.query()
+             .filter(num -> num % 3 == 0)
+             .filter(num -> num % 7 == 0)
+             .limit(1000)
+             .toList();
+         long lazy = System.nanoTime() - startTime;
+         System.out.println("First 1000 multiples of 21 - chained filters: " + eager / 1_000_000
+             + " ms, fused query: " + lazy / 1_000 + " us, same result: " + firstChained.equals(firstFused));
+         
+         // A repeated query is answered from the cache until the data changes
+         for (int run = 0; run < 3; run++) {
+             if (run == 2) {
+                 bigAnalyzer.addElement(21);
+             }
+             startTime = System.nanoTime();
+             long multiples = bigAnalyzer.cachedQuery("multiples of 21",
+                 q -> q.filter(num -> num % 21 == 0).count());
+             System.out.println((run == 2 ? "After adding an element: " : "Run " + (run + 1) + ": ")
+                 + multiples + " multiples of 21 in " + (System.nanoTime() - startTime) / 1_000 + " us");
+         }
+         
+         // A narrow range scans the whole list without an index and a slice of it with one
+         startTime = System.nanoTime();
+         double scanned = bigAnalyzer.range(50_000, 50_100).average(Integer::doubleValue);
+         long scanTime = System.nanoTime() - startTime;
+         bigAnalyzer.enableSortedIndex();
+         bigAnalyzer.range(0, 1).count(); // builds the index
+         startTime = System.nanoTime();
+         double indexed = bigAnalyzer.range(50_000, 50_100).average(Integer::doubleValue);
+         long indexTime = System.nanoTime() - startTime;
+         System.out.printf("Average of values in [50000, 50100): %.2f by scan in %d ms, %.2f by index in %d us%n",
+             scanned, scanTime / 1_000_000, indexed, indexTime / 1_000);
      }
  }
  
@@ -0,0 +1,619 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * NumericFileReader loads large files of numbers straight into primitive
+ * NumericDataAnalyzer columns, or computes their statistics without storing
+ * them at all. Four formats are read:
+ *
+ *   TEXT        one number per line (blank lines and surrounding spaces are ignored)
+ *   INT32_LE    raw 4-byte little-endian ints
+ *   INT64_LE    raw 8-byte little-endian longs
+ *   FLOAT64_LE  raw 8-byte little-endian doubles
+ *
+ * As in TaskBulkIO, the file is memory-mapped in chunks of up to 256 MB, so files
+ * larger than the 2 GB limit of one mapping work too, and the chunks are parsed in
+ * parallel on the fork-join pool. Text chunks are moved forward to the start of
+ * a line so no number is split; binary chunks are cut on whole values. No object
+ * is created per value: binary values are decoded into one array and text values
+ * into one array per chunk that are joined at the end.
+ */
+public class NumericFileReader {
+    public enum Format {
+        TEXT(0), INT32_LE(4), INT64_LE(8), FLOAT64_LE(8);
+
+        private final int width;
+
+        Format(int width) {
+            this.width = width;
+        }
+
+        /** Return the bytes per value, or 0 for text */
+        public int width() {
+            return width;
+        }
+    }
+
+    // Keep each mapped chunk well under the 2 GB limit of a single mapping
+    private static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+    // The largest array the JVM reliably allocates
+    private static final long MAX_COLUMN = Integer.MAX_VALUE - 8;
+    // Powers of ten that doubles hold exactly
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Read a file of whole numbers into a long column
+     * @param file The file to read
+     * @param format TEXT, INT32_LE or INT64_LE
+     * @return The values in file order
+     * @throws IllegalArgumentException if a line is not a whole number in range
+     */
+    public static NumericDataAnalyzer.Longs readLongs(Path file, Format format) throws IOException {
+        if (format == Format.FLOAT64_LE) {
+            throw new IllegalArgumentException("Doubles can't be read as longs; use readDoubles");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (format == Format.TEXT) {
+                List<long[]> chunks = readChunks(channel, lineBounds(channel, size),
+                        (map, start) -> parseLongs(map));
+                long total = 0;
+                for (long[] chunk : chunks) {
+                    total += chunk.length;
+                }
+                long[] values = new long[checkColumnSize(total)];
+                int filled = 0;
+                for (int i = 0; i < chunks.size(); i++) {
+                    System.arraycopy(chunks.get(i), 0, values, filled, chunks.get(i).length);
+                    filled += chunks.get(i).length;
+                    chunks.set(i, null); // Let the chunk go as soon as it is copied
+                }
+                return new NumericDataAnalyzer.Longs(values, values.length);
+            }
+            long[] values = new long[checkColumnSize(valueCount(size, format))];
+            readChunks(channel, valueBounds(size, format), (map, start) -> {
+                int offset = (int) (start / format.width);
+                if (format == Format.INT64_LE) {
+                    map.asLongBuffer().get(values, offset, map.remaining() / 8);
+                } else {
+                    IntBuffer ints = map.asIntBuffer();
+                    for (int i = 0; i < ints.limit(); i++) {
+                        values[offset + i] = ints.get(i);
+                    }
+                }
+                return null;
+            });
+            return new NumericDataAnalyzer.Longs(values, values.length);
+        }
+    }
+
+    /**
+     * Read a file of numbers into a double column
+     * @param file The file to read
+     * @param format Any format; whole numbers are converted to double
+     * @return The values in file order
+     * @throws IllegalArgumentException if a line is not a number
+     */
+    public static NumericDataAnalyzer.Doubles readDoubles(Path file, Format format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (format == Format.TEXT) {
+                List<double[]> chunks = readChunks(channel, lineBounds(channel, size),
+                        (map, start) -> parseDoubles(map));
+                long total = 0;
+                for (double[] chunk : chunks) {
+                    total += chunk.length;
+                }
+                double[] values = new double[checkColumnSize(total)];
+                int filled = 0;
+                for (int i = 0; i < chunks.size(); i++) {
+                    System.arraycopy(chunks.get(i), 0, values, filled, chunks.get(i).length);
+                    filled += chunks.get(i).length;
+                    chunks.set(i, null);
+                }
+                return new NumericDataAnalyzer.Doubles(values, values.length);
+            }
+            double[] values = new double[checkColumnSize(valueCount(size, format))];
+            readChunks(channel, valueBounds(size, format), (map, start) -> {
+                int offset = (int) (start / format.width);
+                if (format == Format.FLOAT64_LE) {
+                    map.asDoubleBuffer().get(values, offset, map.remaining() / 8);
+                } else if (format == Format.INT64_LE) {
+                    LongBuffer longs = map.asLongBuffer();
+                    for (int i = 0; i < longs.limit(); i++) {
+                        values[offset + i] = longs.get(i);
+                    }
+                } else {
+                    IntBuffer ints = map.asIntBuffer();
+                    for (int i = 0; i < ints.limit(); i++) {
+                        values[offset + i] = ints.get(i);
+                    }
+                }
+                return null;
+            });
+            return new NumericDataAnalyzer.Doubles(values, values.length);
+        }
+    }
+
+    /**
+     * Compute the count, sum, min, max and average of a file of numbers without
+     * keeping the values, so a file of any size takes a few bytes per chunk
+     * @param file The file to read
+     * @param format Any format
+     * @return The statistics; text chunks are combined in file order, so the sum is the same on every run
+     * @throws IllegalArgumentException if a line is not a number
+     */
+    public static DoubleSummaryStatistics summarize(Path file, Format format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = format == Format.TEXT ? lineBounds(channel, size) : valueBounds(size, format);
+            List<DoubleSummaryStatistics> chunks = readChunks(channel, bounds, (map, start) -> summarizeChunk(map, format));
+            DoubleSummaryStatistics total = new DoubleSummaryStatistics();
+            for (DoubleSummaryStatistics chunk : chunks) {
+                total.combine(chunk);
+            }
+            return total;
+        }
+    }
+
+    /** Reads one mapped chunk; start is the chunk's offset in the file */
+    private interface ChunkReader<R> {
+        R read(MappedByteBuffer map, long start);
+    }
+
+    private static <R> List<R> readChunks(FileChannel channel, long[] bounds, ChunkReader<R> reader) throws IOException {
+        if (bounds.length < 2) {
+            return new ArrayList<>();
+        }
+        try {
+            return ForkJoinPool.commonPool().invoke(new ReadTask<>(channel, bounds, 0, bounds.length - 1, reader));
+        } catch (ChunkFailure e) {
+            throw e.io;
+        }
+    }
+
+    /** Splits the range of chunks in half until one chunk is left, then reads it */
+    private static class ReadTask<R> extends RecursiveTask<List<R>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+        private final ChunkReader<R> reader;
+
+        ReadTask(FileChannel channel, long[] bounds, int from, int to, ChunkReader<R> reader) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.reader = reader;
+        }
+
+        @Override
+        protected List<R> compute() {
+            if (to - from == 1) {
+                try {
+                    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[to] - bounds[from]);
+                    map.order(ByteOrder.LITTLE_ENDIAN);
+                    List<R> result = new ArrayList<>();
+                    result.add(reader.read(map, bounds[from]));
+                    return result;
+                } catch (IOException e) {
+                    throw new ChunkFailure(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ReadTask<R> left = new ReadTask<>(channel, bounds, from, mid, reader);
+            ReadTask<R> right = new ReadTask<>(channel, bounds, mid, to, reader);
+            left.fork();
+            List<R> rightResult = right.compute();
+            List<R> result = left.join();
+            result.addAll(rightResult);
+            return result;
+        }
+    }
+
+    /** Carries an IOException out of a fork-join task */
+    private static class ChunkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final IOException io;
+
+        ChunkFailure(IOException io) {
+            super(io);
+            this.io = io;
+        }
+    }
+
+    private static long chunkSize(long size) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_BYTES, size / (parallelism * 4L) + 1);
+        return Math.min(chunkSize, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Split a text file into chunks that each start at the beginning of a line
+     */
+    private static long[] lineBounds(FileChannel channel, long size) throws IOException {
+        long chunkSize = chunkSize(size);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = chunkSize;
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (position < size) {
+            // Move forward to just past the next newline so no line is split
+            long p = position;
+            long next = -1;
+            while (next < 0 && p < size) {
+                window.clear();
+                int read = channel.read(window, p);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        next = p + i + 1;
+                        break;
+                    }
+                }
+                p += read;
+            }
+            if (next < 0 || next >= size) {
+                break;
+            }
+            bounds.add(next);
+            position = next + chunkSize;
+        }
+        bounds.add(size);
+        return toArray(bounds);
+    }
+
+    /**
+     * Split a binary file into chunks of whole values
+     */
+    private static long[] valueBounds(long size, Format format) {
+        valueCount(size, format);
+        long chunkSize = chunkSize(size) / format.width * format.width;
+        List<Long> bounds = new ArrayList<>();
+        for (long position = 0; position < size; position += chunkSize) {
+            bounds.add(position);
+        }
+        bounds.add(size);
+        return toArray(bounds);
+    }
+
+    private static long valueCount(long size, Format format) {
+        if (size % format.width != 0) {
+            throw new IllegalArgumentException("File size " + size + " is not a whole number of "
+                    + format.width + "-byte values");
+        }
+        return size / format.width;
+    }
+
+    private static int checkColumnSize(long count) {
+        if (count > MAX_COLUMN) {
+            throw new IllegalArgumentException(count + " values are too many for one column; use summarize");
+        }
+        return (int) count;
+    }
+
+    private static long[] toArray(List<Long> bounds) {
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long[] parseLongs(MappedByteBuffer map) {
+        long[] values = new long[Math.min(map.limit() / 4 + 16, 1 << 20)];
+        int count = 0;
+        int limit = map.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && map.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int start = skipBlanks(map, lineStart, lineEnd);
+            int end = trimBlanks(map, start, lineEnd);
+            if (start < end) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, NumericDataAnalyzer.grow(values.length, count + 1));
+                }
+                values[count++] = parseLong(map, start, end);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private static double[] parseDoubles(MappedByteBuffer map) {
+        double[] values = new double[Math.min(map.limit() / 4 + 16, 1 << 20)];
+        int count = 0;
+        int limit = map.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && map.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int start = skipBlanks(map, lineStart, lineEnd);
+            int end = trimBlanks(map, start, lineEnd);
+            if (start < end) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, NumericDataAnalyzer.grow(values.length, count + 1));
+                }
+                values[count++] = parseDouble(map, start, end);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private static DoubleSummaryStatistics summarizeChunk(MappedByteBuffer map, Format format) {
+        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
+        switch (format) {
+            case INT32_LE: {
+                IntBuffer ints = map.asIntBuffer();
+                for (int i = 0; i < ints.limit(); i++) {
+                    statistics.accept(ints.get(i));
+                }
+                break;
+            }
+            case INT64_LE: {
+                LongBuffer longs = map.asLongBuffer();
+                for (int i = 0; i < longs.limit(); i++) {
+                    statistics.accept(longs.get(i));
+                }
+                break;
+            }
+            case FLOAT64_LE: {
+                DoubleBuffer doubles = map.asDoubleBuffer();
+                for (int i = 0; i < doubles.limit(); i++) {
+                    statistics.accept(doubles.get(i));
+                }
+                break;
+            }
+            default: {
+                int limit = map.limit();
+                int lineStart = 0;
+                while (lineStart < limit) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit && map.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    int start = skipBlanks(map, lineStart, lineEnd);
+                    int end = trimBlanks(map, start, lineEnd);
+                    if (start < end) {
+                        statistics.accept(parseDouble(map, start, end));
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private static int skipBlanks(MappedByteBuffer map, int start, int end) {
+        while (start < end && isBlank(map.get(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimBlanks(MappedByteBuffer map, int start, int end) {
+        while (end > start && isBlank(map.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    // Parse digits the way Long.parseLong does, accumulating negatively so
+    // Long.MIN_VALUE fits, and rejecting anything that would overflow
+    private static long parseLong(MappedByteBuffer map, int start, int end) {
+        boolean negative = map.get(start) == '-';
+        int i = negative || map.get(start) == '+' ? start + 1 : start;
+        if (i == end) {
+            throw badNumber(map, start, end);
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = map.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < multiplyLimit) {
+                throw badNumber(map, start, end);
+            }
+            value *= 10;
+            if (value < limit + digit) {
+                throw badNumber(map, start, end);
+            }
+            value -= digit;
+        }
+        return negative ? value : -value;
+    }
+
+    // Numbers with at most 15 significant digits and a power of ten up to 22 are
+    // exact as one multiply or divide of two exact doubles, so they are correctly
+    // rounded (Clinger's fast path). Anything else goes through Double.parseDouble.
+    private static double parseDouble(MappedByteBuffer map, int start, int end) {
+        int i = start;
+        boolean negative = map.get(i) == '-';
+        if (negative || map.get(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+        boolean sawPoint = false;
+        for (; i < end; i++) {
+            byte b = map.get(i);
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros are not significant
+                    if (sawPoint) {
+                        exponent--;
+                    }
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (sawPoint) {
+                        exponent--;
+                    }
+                } else {
+                    digits++;
+                    if (!sawPoint) {
+                        exponent++;
+                    }
+                }
+            } else if (b == '.' && !sawPoint) {
+                sawPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && sawDigit && (map.get(i) == 'e' || map.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && map.get(i) == '-';
+            if (i < end && (map.get(i) == '-' || map.get(i) == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            int written = 0;
+            for (; i < end && map.get(i) >= '0' && map.get(i) <= '9'; i++) {
+                if (i - exponentStart >= 5) {
+                    return slowParseDouble(map, start, end);
+                }
+                written = written * 10 + (map.get(i) - '0');
+            }
+            if (i == exponentStart || i < end) {
+                return slowParseDouble(map, start, end);
+            }
+            exponent += negativeExponent ? -written : written;
+        }
+        if (i < end || !sawDigit || digits > 15 || exponent < -22 || exponent > 22) {
+            return slowParseDouble(map, start, end);
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(MappedByteBuffer map, int start, int end) {
+        try {
+            return Double.parseDouble(text(map, start, end));
+        } catch (NumberFormatException e) {
+            throw badNumber(map, start, end);
+        }
+    }
+
+    private static IllegalArgumentException badNumber(MappedByteBuffer map, int start, int end) {
+        return new IllegalArgumentException("Bad number: '" + text(map, start, end) + "'");
+    }
+
+    private static String text(MappedByteBuffer map, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = map.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Demonstration: the same ten million numbers as text and as binary
+    public static void main(String[] args) throws IOException {
+        final int count = 10_000_000;
+        Random random = new Random(42);
+        long[] source = new long[count];
+        for (int i = 0; i < count; i++) {
+            source[i] = random.nextInt(2_000_001) - 1_000_000;
+        }
+
+        Path text = Files.createTempFile("numbers", ".txt");
+        Path binary = Files.createTempFile("numbers", ".bin");
+        try {
+            StringBuilder lines = new StringBuilder();
+            try (BufferedWriter out = Files.newBufferedWriter(text, StandardCharsets.US_ASCII)) {
+                for (long value : source) {
+                    lines.setLength(0);
+                    out.append(lines.append(value).append('\n'));
+                }
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(count * 8).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asLongBuffer().put(source);
+            Files.write(binary, bytes.array());
+
+            System.out.println("=== NUMERIC FILE INGESTION ===");
+            System.out.printf("Text file: %,d bytes, binary file: %,d bytes%n", Files.size(text), Files.size(binary));
+
+            // The usual way: read lines, box each number and add it to a list
+            long startTime = System.nanoTime();
+            GenericDataAnalyzer<Long> boxed = new GenericDataAnalyzer<>();
+            try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.US_ASCII)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    boxed.addElement(Long.parseLong(line));
+                }
+            }
+            double boxedAverage = boxed.average();
+            long boxedTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            NumericDataAnalyzer.Longs fromText = readLongs(text, Format.TEXT);
+            long textTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            NumericDataAnalyzer.Longs fromBinary = readLongs(binary, Format.INT64_LE);
+            long binaryTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            DoubleSummaryStatistics statistics = summarize(text, Format.TEXT);
+            long summaryTime = System.nanoTime() - startTime;
+
+            boolean same = fromText.size() == count && fromBinary.size() == count;
+            for (int i = 0; same && i < count; i++) {
+                same = fromText.get(i) == source[i] && fromBinary.get(i) == source[i];
+            }
+            System.out.printf("BufferedReader into a boxed list: average %.4f in %d ms%n", boxedAverage, boxedTime / 1_000_000);
+            System.out.printf("Mapped text into a long column: average %.4f in %d ms%n", fromText.average(), textTime / 1_000_000);
+            System.out.printf("Mapped binary into a long column: average %.4f in %d ms%n", fromBinary.average(), binaryTime / 1_000_000);
+            System.out.printf("Statistics only, nothing stored: average %.4f, min %.0f, max %.0f in %d ms%n",
+                    statistics.getAverage(), statistics.getMin(), statistics.getMax(), summaryTime / 1_000_000);
+            System.out.println("Every value matches the source: " + same);
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(binary);
+        }
+    }
+}
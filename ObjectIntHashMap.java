@@ -0,0 +1,243 @@
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * ObjectIntHashMap maps objects to primitive ints, for counting and for
+ * remembering positions, without the Integer boxes and per-entry nodes of a
+ * HashMap<K, Integer>. Keys and values sit in two parallel arrays and
+ * collisions are resolved by linear probing, so a lookup usually reads one or
+ * two neighbouring slots. increment updates a count in place with one probe
+ * sequence instead of a get followed by a put.
+ *
+ * Removal shifts later entries of the probe run back rather than leaving
+ * tombstones, so lookups never slow down after many removals. The table is at
+ * most two-thirds full, and iteration visits every slot, so it costs
+ * O(capacity), which stays within a small factor of the largest size reached.
+ *
+ * withIdentityKeys compares keys with == and hashes them with
+ * System.identityHashCode, like IdentityHashMap. Null keys are not allowed.
+ *
+ * @param <K> The type of key
+ */
+public class ObjectIntHashMap<K> {
+    private static final int MIN_CAPACITY = 8;
+
+    private final boolean identity;
+    private Object[] keys;
+    private int[] values;
+    private int size = 0;
+    // Hashes are multiplied by a large odd constant and the top bits taken as the slot
+    private int shift;
+    private int threshold;
+
+    /** Create an empty map */
+    public ObjectIntHashMap() {
+        this(0, false);
+    }
+
+    /**
+     * Create a map that holds expectedSize keys without growing
+     * @param expectedSize The number of keys expected
+     */
+    public ObjectIntHashMap(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    private ObjectIntHashMap(int expectedSize, boolean identity) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative: " + expectedSize);
+        }
+        this.identity = identity;
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Create a map that compares keys by identity rather than equals
+     * @param expectedSize The number of keys expected
+     * @return The map
+     */
+    public static <K> ObjectIntHashMap<K> withIdentityKeys(int expectedSize) {
+        return new ObjectIntHashMap<>(expectedSize, true);
+    }
+
+    /** Return the number of keys */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Return true if the map has the key */
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /** Return the value for a key, or defaultValue if the key is not in the map */
+    public int getOrDefault(Object key, int defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    /**
+     * Map a key to a value
+     * @return The value it replaced, or 0 if the key is new
+     */
+    public int put(K key, int value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            int old = values[index];
+            values[index] = value;
+            return old;
+        }
+        insertAt(-index - 1, key, value);
+        return 0;
+    }
+
+    /**
+     * Add delta to a key's value, starting from 0 if the key is new
+     * @return The new value
+     */
+    public int increment(K key, int delta) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return values[index] += delta;
+        }
+        insertAt(-index - 1, key, delta);
+        return delta;
+    }
+
+    /**
+     * Remove a key
+     * @return Its value, or 0 if the key was not in the map
+     */
+    public int remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return 0;
+        }
+        int old = values[index];
+        removeAt(index);
+        return old;
+    }
+
+    /** Remove every key, keeping the current capacity */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /** Call an action for every key and value, in no particular order */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super K> action) {
+        Object[] table = keys;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                action.accept((K) table[i], values[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(key).append('=').append(value);
+        });
+        return result.append('}').toString();
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Smallest power of two whose threshold admits expectedSize keys
+        int capacity = MIN_CAPACITY;
+        while (thresholdFor(capacity) < expectedSize) {
+            if (capacity == 1 << 30) {
+                throw new IllegalArgumentException("Too many keys: " + expectedSize);
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // The table grows before an insert would make it more than two-thirds full
+    private static int thresholdFor(int capacity) {
+        return (int) (capacity * 2L / 3);
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        threshold = thresholdFor(capacity);
+    }
+
+    private int slotOf(Object key) {
+        int hash = identity ? System.identityHashCode(key) : key.hashCode();
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    /** Return the slot holding key, or -(empty slot where it would go) - 1 */
+    private int indexOf(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Null keys are not allowed");
+        }
+        Object[] table = keys;
+        int mask = table.length - 1;
+        for (int i = slotOf(key); ; i = (i + 1) & mask) {
+            Object stored = table[i];
+            if (stored == null) {
+                return -i - 1;
+            }
+            if (stored == key || (!identity && key.equals(stored))) {
+                return i;
+            }
+        }
+    }
+
+    private void insertAt(int index, Object key, int value) {
+        if (size >= threshold) {
+            grow();
+            index = -indexOf(key) - 1;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Close the gap: later entries of the run whose home slot is at or before
+    // the hole move back into it, so every key stays reachable from its home
+    private void removeAt(int hole) {
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = slotOf(keys[i]);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        size--;
+    }
+}
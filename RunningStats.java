@@ -0,0 +1,187 @@
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * Running aggregates for GenericDataAnalyzer's incremental mode. Adds and removes
+ * update everything in O(1) except min/max bookkeeping, which costs O(log n) only
+ * the first time a distinct value appears. Callers that track min and max another
+ * way (such as WindowedAnalyzer) can turn that bookkeeping off.
+ */
+class RunningStats<T extends Comparable<T>> {
+    private final boolean trackOrder;
+    // Occurrences of each distinct element
+    private final ObjectIntHashMap<T> frequency = new ObjectIntHashMap<>();
+    // Number of distinct elements that occur exactly c times, for each count c
+    private final IntIntHashMap distinctByCount = new IntIntHashMap();
+    // Distinct values in order; values removed entirely are left in place and
+    // skipped when they reach the top (lazy deletion)
+    private final PriorityQueue<T> lowest = new PriorityQueue<>();
+    private final PriorityQueue<T> highest = new PriorityQueue<>(Collections.reverseOrder());
+
+    private T min;
+    private T max;
+    private T mostFrequent;
+    private int maxFrequency;
+    private boolean minStale;
+    private boolean maxStale;
+    private boolean modeStale;
+    private long numericCount;
+    private double sum;
+
+    RunningStats() {
+        this(true);
+    }
+
+    RunningStats(boolean trackOrder) {
+        this.trackOrder = trackOrder;
+    }
+
+    void add(T element) {
+        if (element instanceof Number) {
+            sum += ((Number) element).doubleValue();
+            numericCount++;
+        }
+        int count = frequency.increment(element, 1);
+        moveCount(count - 1, count);
+        if (trackOrder && count == 1) {
+            lowest.add(element);
+            highest.add(element);
+            compactHeaps();
+        }
+        if (trackOrder && !minStale && (min == null || element.compareTo(min) < 0)) {
+            min = element;
+        }
+        if (trackOrder && !maxStale && (max == null || element.compareTo(max) > 0)) {
+            max = element;
+        }
+        // Ties go to the smallest, as in findMostFrequent and summarize()
+        if (count > maxFrequency) {
+            maxFrequency = count;
+            mostFrequent = element;
+            modeStale = false;
+        } else if (count == maxFrequency && !modeStale && element.compareTo(mostFrequent) < 0) {
+            mostFrequent = element;
+        }
+    }
+
+    boolean remove(T element) {
+        int count = frequency.getOrDefault(element, 0);
+        if (count == 0) {
+            return false;
+        }
+        if (element instanceof Number) {
+            sum -= ((Number) element).doubleValue();
+            numericCount--;
+        }
+        if (count == 1) {
+            frequency.remove(element);
+            // Leaving the heaps alone; the stale entry is skipped later
+            if (min != null && element.compareTo(min) == 0) {
+                minStale = true;
+            }
+            if (max != null && element.compareTo(max) == 0) {
+                maxStale = true;
+            }
+        } else {
+            frequency.increment(element, -1);
+        }
+        moveCount(count, count - 1);
+        if (count == maxFrequency) {
+            if (distinctByCount.containsKey(count)) {
+                // Another element still occurs maxFrequency times
+                if (element.equals(mostFrequent)) {
+                    modeStale = true;
+                }
+            } else {
+                // This element alone had the top count, and still has the new top
+                // count, but may now share it with smaller elements
+                maxFrequency = count - 1;
+                if (maxFrequency > 0 && distinctByCount.getOrDefault(maxFrequency, 0) > 1) {
+                    modeStale = true;
+                } else {
+                    mostFrequent = maxFrequency > 0 ? element : null;
+                    modeStale = false;
+                }
+            }
+        }
+        if (frequency.isEmpty()) {
+            min = null;
+            max = null;
+            minStale = false;
+            maxStale = false;
+        }
+        return true;
+    }
+
+    T min() {
+        if (minStale) {
+            min = peekLive(lowest);
+            minStale = false;
+        }
+        return min;
+    }
+
+    T max() {
+        if (maxStale) {
+            max = peekLive(highest);
+            maxStale = false;
+        }
+        return max;
+    }
+
+    T mostFrequent() {
+        if (modeStale) {
+            // Only reached when a removal left the top count shared
+            mostFrequent = null;
+            frequency.forEach((element, count) -> {
+                if (count == maxFrequency && (mostFrequent == null || element.compareTo(mostFrequent) < 0)) {
+                    mostFrequent = element;
+                }
+            });
+            modeStale = false;
+        }
+        return mostFrequent;
+    }
+
+    int frequencyOf(T element) {
+        return frequency.getOrDefault(element, 0);
+    }
+
+    double sum() {
+        return sum;
+    }
+
+    double average() {
+        return numericCount > 0 ? sum / numericCount : 0.0;
+    }
+
+    private void moveCount(int from, int to) {
+        if (from > 0 && distinctByCount.increment(from, -1) == 0) {
+            distinctByCount.remove(from);
+        }
+        if (to > 0) {
+            distinctByCount.increment(to, 1);
+        }
+    }
+
+    private T peekLive(PriorityQueue<T> heap) {
+        while (!heap.isEmpty() && !frequency.containsKey(heap.peek())) {
+            heap.poll();
+        }
+        return heap.peek();
+    }
+
+    // Rebuild the heaps once stale entries make up more than half of them
+    private void compactHeaps() {
+        if (lowest.size() > 2 * frequency.size() + 16) {
+            lowest.clear();
+            frequency.forEach((element, count) -> lowest.add(element));
+            minStale = true;
+        }
+        if (highest.size() > 2 * frequency.size() + 16) {
+            highest.clear();
+            frequency.forEach((element, count) -> highest.add(element));
+            maxStale = true;
+        }
+    }
+}
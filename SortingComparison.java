@@ -68,11 +68,13 @@ public class SortingComparison {
             mergeSortHelper(arr, mid + 1, right);
             
             // Merge the sorted halves
-            merge(arr, left, mid, right);
+            mergeComparisons += merge(arr, left, mid, right);
         }
     }
     
-    private static void merge(int[] arr, int left, int mid, int right) {
+    // Returns the number of comparisons made
+    private static long merge(int[] arr, int left, int mid, int right) {
+        long comparisons = 0;
         // Create temporary arrays for left and right subarrays
         int[] leftArr = new int[mid - left + 1];
         int[] rightArr = new int[right - mid];
@@ -85,7 +87,7 @@ public class SortingComparison {
         int i = 0, j = 0, k = left;
         
         while (i < leftArr.length && j < rightArr.length) {
-            mergeComparisons++; // Count this comparison
+            comparisons++; // Count this comparison
             if (leftArr[i] <= rightArr[j]) {
                 arr[k] = leftArr[i];
                 i++;
@@ -108,6 +110,40 @@ public class SortingComparison {
             j++;
             k++;
         }
+        return comparisons;
+    }
+    
+    // The same merge sort described as split / base case / combine steps for
+    // DivideAndConquer. The answer for each range is its comparison count, so
+    // counting works when ranges are sorted on different threads.
+    private static DivideAndConquer<int[], Long> mergeSortSteps(int[] arr) {
+        // A problem is the inclusive range {left, right}
+        return DivideAndConquer.<int[], Long>of(
+                range -> range[0] >= range[1],
+                range -> 0L,
+                range -> {
+                    int mid = range[0] + (range[1] - range[0]) / 2;
+                    return Arrays.asList(new int[] {range[0], mid}, new int[] {mid + 1, range[1]});
+                },
+                (range, halves) -> {
+                    int mid = range[0] + (range[1] - range[0]) / 2;
+                    return halves.get(0) + halves.get(1) + merge(arr, range[0], mid, range[1]);
+                })
+                .withSize(range -> range[1] - range[0] + 1L);
+    }
+    
+    // Merge sort on DivideAndConquer, on this thread or on the fork-join pool
+    public static SortResult mergeSortDivideAndConquer(int[] arr, boolean parallel) {
+        long startTime = System.nanoTime();
+        
+        DivideAndConquer<int[], Long> steps = mergeSortSteps(arr);
+        int[] whole = {0, arr.length - 1};
+        long comparisons = parallel ? steps.solveParallel(whole) : steps.solve(whole);
+        
+        long endTime = System.nanoTime();
+        long timeTaken = (endTime - startTime) / 1_000_000; // Convert to milliseconds
+        
+        return new SortResult(timeTaken, comparisons);
     }
     
     // Method to generate random array
@@ -197,5 +233,26 @@ public class SortingComparison {
             String.format("%.2fx faster", (double) bubbleResult.timeTaken / mergeResult.timeTaken));
         System.out.println("Comparison reduction (Merge vs Bubble): " + 
             String.format("%.2fx fewer", (double) bubbleResult.comparisons / mergeResult.comparisons));
+        
+        // Benchmark: the recursive merge sort against the same steps on DivideAndConquer
+        final int LARGE_SIZE = 2_000_000;
+        System.out.println("\n=== DIVIDE-AND-CONQUER FRAMEWORK (" + LARGE_SIZE + " elements) ===");
+        int[] largeArray = generateRandomArray(LARGE_SIZE);
+        for (int round = 0; round < 2; round++) {
+            int[] recursive = copyArray(largeArray);
+            SortResult recursiveResult = mergeSort(recursive);
+            int[] sequential = copyArray(largeArray);
+            SortResult sequentialResult = mergeSortDivideAndConquer(sequential, false);
+            int[] parallel = copyArray(largeArray);
+            SortResult parallelResult = mergeSortDivideAndConquer(parallel, true);
+            System.out.println("Round " + (round + 1) + ":");
+            System.out.println("  Recursive:   " + recursiveResult.timeTaken + " ms, "
+                + recursiveResult.comparisons + " comparisons");
+            System.out.println("  Trampoline:  " + sequentialResult.timeTaken + " ms, "
+                + sequentialResult.comparisons + " comparisons, sorted: " + isSorted(sequential));
+            System.out.println("  Fork-join:   " + parallelResult.timeTaken + " ms, "
+                + parallelResult.comparisons + " comparisons, sorted: " + isSorted(parallel)
+                + " (" + Runtime.getRuntime().availableProcessors() + " processors)");
+        }
     }
 }
\ No newline at end of file
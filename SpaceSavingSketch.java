@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SpaceSavingSketch finds the most frequent items of a stream (heavy hitters)
+ * while tracking at most a fixed number of items. When a new item arrives and
+ * every counter is taken, it replaces the item with the smallest count and
+ * inherits that count, remembering it as the possible overestimate.
+ *
+ * With capacity k, every item occurring more than n / k times in a stream of n
+ * items is tracked, and each reported count is at most n / k too high. Counters
+ * sit in a min-heap, so each update is O(log k). Sketches can be merged.
+ * Null is counted like any other item.
+ *
+ * @param <T> The type of item
+ */
+public class SpaceSavingSketch<T> {
+    /** One tracked item: count is an upper bound and count - error a lower bound */
+    public static final class Counter<T> {
+        private final T item;
+        private final long count;
+        private final long error;
+
+        Counter(T item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /** Return the estimated count, never lower than the true count */
+        public long getCount() {
+            return count;
+        }
+
+        /** Return how much the count may overestimate */
+        public long getError() {
+            return error;
+        }
+
+        /** Return the count the item is guaranteed to have reached */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return item + "=" + count + (error > 0 ? " (+/-" + error + ")" : "");
+        }
+    }
+
+    // Stands in for a null item in slots, which does not allow null keys
+    private static final Object NULL_ITEM = new Object();
+
+    private final int capacity;
+    // Parallel arrays forming a min-heap on counts; slots holds each item's heap position
+    private final Object[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final ObjectIntHashMap<Object> slots;
+    private int size = 0;
+    private long totalCount = 0;
+
+    /**
+     * Create a sketch that tracks a fixed number of items
+     * @param capacity The most items tracked
+     */
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.items = new Object[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.slots = new ObjectIntHashMap<>(capacity);
+    }
+
+    /**
+     * Create a sketch whose counts are at most epsilon * n too high
+     * @param epsilon The error as a fraction of the stream length, such as 0.001
+     * @return A sketch with capacity ceil(1 / epsilon)
+     */
+    public static <T> SpaceSavingSketch<T> withError(double epsilon) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("epsilon must be between 0 and 1: " + epsilon);
+        }
+        return new SpaceSavingSketch<>((int) Math.ceil(1 / epsilon));
+    }
+
+    /** Count one occurrence of an item */
+    public void add(T item) {
+        add(item, 1, 0);
+    }
+
+    /**
+     * Return the estimated count of an item: its counter if tracked, otherwise
+     * the smallest counter once the sketch is full (an upper bound), or 0
+     */
+    public long estimate(T item) {
+        int slot = slots.getOrDefault(keyOf(item), -1);
+        if (slot >= 0) {
+            return counts[slot];
+        }
+        return size == capacity ? counts[0] : 0;
+    }
+
+    /**
+     * Return the most frequent items
+     * @param k The most items to return
+     * @return Up to k counters, highest count first
+     */
+    public List<Counter<T>> topK(int k) {
+        List<Counter<T>> all = counters();
+        all.sort((a, b) -> Long.compare(b.count, a.count));
+        return all.size() > k ? new ArrayList<>(all.subList(0, k)) : all;
+    }
+
+    /**
+     * Add everything counted by another sketch. An item tracked by only one side
+     * is given the other side's smallest counter as a possible count, so counts
+     * stay upper bounds; the error bound becomes the sum of both.
+     * @param other The sketch to merge in, with any capacity
+     * @return This sketch
+     */
+    public SpaceSavingSketch<T> merge(SpaceSavingSketch<T> other) {
+        long thisFloor = size == capacity ? counts[0] : 0;
+        long otherFloor = other.size == other.capacity ? other.counts[0] : 0;
+        Map<T, long[]> combined = new HashMap<>();
+        for (Counter<T> counter : counters()) {
+            combined.put(counter.item, new long[] {counter.count + otherFloor, counter.error + otherFloor});
+        }
+        for (Counter<T> counter : other.counters()) {
+            long[] entry = combined.get(counter.item);
+            if (entry == null) {
+                combined.put(counter.item, new long[] {counter.count + thisFloor, counter.error + thisFloor});
+            } else {
+                // Tracked on both sides, so the guess added for the other side is replaced by its real counter
+                entry[0] += counter.count - otherFloor;
+                entry[1] += counter.error - otherFloor;
+            }
+        }
+        long total = totalCount + other.totalCount;
+        List<Map.Entry<T, long[]>> entries = new ArrayList<>(combined.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        clear();
+        for (int i = 0; i < entries.size() && i < capacity; i++) {
+            long[] entry = entries.get(i).getValue();
+            add(entries.get(i).getKey(), entry[0], entry[1]);
+        }
+        totalCount = total;
+        return this;
+    }
+
+    /** Return the number of items added */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /** Return the most items tracked */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Return the largest amount any count may overestimate by, at most n / capacity */
+    public long getErrorBound() {
+        return size == capacity ? counts[0] : 0;
+    }
+
+    /** Forget everything added */
+    public void clear() {
+        Arrays.fill(items, 0, size, null);
+        slots.clear();
+        size = 0;
+        totalCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Counter<T>> counters() {
+        List<Counter<T>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new Counter<>((T) items[i], counts[i], errors[i]));
+        }
+        return result;
+    }
+
+    private static Object keyOf(Object item) {
+        return item == null ? NULL_ITEM : item;
+    }
+
+    private void add(T item, long count, long error) {
+        totalCount += count;
+        int slot = slots.getOrDefault(keyOf(item), -1);
+        if (slot >= 0) {
+            counts[slot] += count;
+            siftDown(slot);
+        } else if (size < capacity) {
+            items[size] = item;
+            counts[size] = count;
+            errors[size] = error;
+            slots.put(keyOf(item), size);
+            siftUp(size++);
+        } else {
+            // Evict the smallest counter; the newcomer may have occurred that often unseen
+            slots.remove(keyOf(items[0]));
+            long floor = counts[0];
+            items[0] = item;
+            counts[0] = floor + count;
+            errors[0] = floor + error;
+            slots.put(keyOf(item), 0);
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[child + 1] < counts[child]) {
+                child++;
+            }
+            if (counts[index] <= counts[child]) {
+                break;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Object item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+        long error = errors[a];
+        errors[a] = errors[b];
+        errors[b] = error;
+        slots.put(keyOf(items[a]), a);
+        slots.put(keyOf(items[b]), b);
+    }
+
+    @Override
+    public String toString() {
+        return "SpaceSavingSketch{capacity=" + capacity + ", top=" + topK(5) + "}";
+    }
+}
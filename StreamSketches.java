@@ -0,0 +1,183 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * StreamSketches bundles the three fixed-memory summaries a GenericDataAnalyzer
+ * can keep instead of an exact frequency table: a SpaceSavingSketch for the most
+ * frequent items, a CountMinSketch for the frequency of any item and a
+ * HyperLogLog for the number of distinct items. Memory is set by the error bounds
+ * given to the constructor and does not grow with the stream.
+ *
+ * Bundles built with the same settings can be merged, so separate threads or
+ * partitions can each fill their own and combine them at the end.
+ *
+ * @param <T> The type of item
+ */
+public class StreamSketches<T> {
+    private final SpaceSavingSketch<T> heavyHitters;
+    private final CountMinSketch frequencies;
+    private final HyperLogLog distinct;
+    private long count = 0;
+
+    /**
+     * Create sketches with explicit error bounds
+     * @param heavyHitterError Top-k counts are at most this fraction of the stream too high
+     * @param frequencyError Frequency estimates are at most this fraction of the stream too high...
+     * @param failureProbability ...except with this probability
+     * @param distinctError The relative standard error of the distinct count
+     */
+    public StreamSketches(double heavyHitterError, double frequencyError, double failureProbability, double distinctError) {
+        this.heavyHitters = SpaceSavingSketch.withError(heavyHitterError);
+        this.frequencies = new CountMinSketch(frequencyError, failureProbability);
+        this.distinct = HyperLogLog.withError(distinctError);
+    }
+
+    /**
+     * Create sketches with defaults that use about 1.1 MB: heavy hitters and
+     * frequencies within 0.1% and 0.01% of the stream length, distinct count within about 1%
+     */
+    public StreamSketches() {
+        this(0.001, 0.0001, 0.01, 0.01);
+    }
+
+    /** Add one item to every sketch */
+    public void accept(T item) {
+        long hash = hash64(item);
+        heavyHitters.add(item);
+        frequencies.addHash(hash, 1);
+        distinct.addHash(hash);
+        count++;
+    }
+
+    /**
+     * Add everything from sketches built with the same settings
+     * @param other The sketches to merge in
+     * @return These sketches
+     */
+    public StreamSketches<T> merge(StreamSketches<T> other) {
+        heavyHitters.merge(other.heavyHitters);
+        frequencies.merge(other.frequencies);
+        distinct.merge(other.distinct);
+        count += other.count;
+        return this;
+    }
+
+    /** Forget everything added, keeping the error bounds */
+    public void clear() {
+        heavyHitters.clear();
+        frequencies.clear();
+        distinct.clear();
+        count = 0;
+    }
+
+    /** Return up to k of the most frequent items, highest count first */
+    public List<SpaceSavingSketch.Counter<T>> topK(int k) {
+        return heavyHitters.topK(k);
+    }
+
+    /** Return the most frequent item seen, or null if there are none */
+    public T mostFrequent() {
+        List<SpaceSavingSketch.Counter<T>> top = heavyHitters.topK(1);
+        return top.isEmpty() ? null : top.get(0).getItem();
+    }
+
+    /** Return an estimate of how often an item occurred, never lower than the truth */
+    public long estimateFrequency(T item) {
+        // Both sketches only overestimate, so the smaller answer is the better one
+        return Math.min(frequencies.estimateHash(hash64(item)), heavyHitters.estimate(item));
+    }
+
+    /** Return an estimate of the number of distinct items */
+    public long estimateDistinct() {
+        return distinct.estimate();
+    }
+
+    /** Return the number of items added */
+    public long count() {
+        return count;
+    }
+
+    public SpaceSavingSketch<T> getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    public CountMinSketch getFrequencies() {
+        return frequencies;
+    }
+
+    public HyperLogLog getDistinct() {
+        return distinct;
+    }
+
+    /**
+     * Hash an item to 64 well mixed bits. Strings and whole numbers are hashed
+     * from their full contents; other objects from their 32-bit hashCode.
+     * @param item The item, or null
+     * @return The hash
+     */
+    public static long hash64(Object item) {
+        if (item instanceof Long || item instanceof Integer || item instanceof Short || item instanceof Byte) {
+            return mix64(((Number) item).longValue());
+        }
+        if (item instanceof Double) {
+            return mix64(Double.doubleToLongBits((Double) item));
+        }
+        if (item instanceof CharSequence) {
+            // 64-bit FNV-1a over the characters, then mixed
+            CharSequence text = (CharSequence) item;
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+            }
+            return mix64(hash);
+        }
+        return mix64(item == null ? 0 : item.hashCode());
+    }
+
+    /** Spread the bits of a value over all 64 bits (the MurmurHash3 finalizer) */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamSketches{count=" + count + ", distinct~" + estimateDistinct() + ", top=" + topK(5) + "}";
+    }
+
+    // Demonstration: a skewed stream with a million distinct values
+    public static void main(String[] args) {
+        final int streamLength = 5_000_000;
+        Random random = new Random(42);
+        StreamSketches<Integer> left = new StreamSketches<>();
+        StreamSketches<Integer> right = new StreamSketches<>();
+        Map<Integer, Integer> exact = new HashMap<>();
+        for (int i = 0; i < streamLength; i++) {
+            // Half the stream is spread over a million values, half over a few popular ones
+            int value = random.nextBoolean() ? random.nextInt(1_000_000) : (int) Math.abs(random.nextGaussian() * 20);
+            // Two partitions filled separately, as two threads would
+            (i % 2 == 0 ? left : right).accept(value);
+            exact.merge(value, 1, Integer::sum);
+        }
+        StreamSketches<Integer> sketches = left.merge(right);
+
+        System.out.println("Items: " + sketches.count());
+        System.out.println("Distinct: " + sketches.estimateDistinct() + " estimated, "
+                + exact.size() + " exact");
+        System.out.println("Top 5 estimated:");
+        for (SpaceSavingSketch.Counter<Integer> counter : sketches.topK(5)) {
+            System.out.println("  " + counter.getItem() + ": " + counter.getCount()
+                    + " estimated (error at most " + counter.getError() + "), " + exact.get(counter.getItem()) + " exact");
+        }
+        int rare = 123_456;
+        System.out.println("Frequency of " + rare + ": " + sketches.estimateFrequency(rare)
+                + " estimated, " + exact.getOrDefault(rare, 0) + " exact (bound: +"
+                + sketches.getFrequencies().getErrorBound() + ")");
+    }
+}
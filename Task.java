@@ -1,10 +1,37 @@
+import java.util.Comparator;
+
 /**
  * Task class represents an individual task with a name and priority level.
  * Implements Comparable to allow sorting by priority (1 = highest, 5 = lowest).
+ * A task may also carry a deadline, used by the earliest-deadline-first ordering.
  */
 public class Task implements Comparable<Task> {
+    /** Deadline value meaning the task has no deadline */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+    
+    /**
+     * Earliest-deadline-first ordering: tasks with the soonest deadline come first,
+     * tasks without a deadline come last, and ties are broken by priority
+     */
+    public static final Comparator<Task> BY_DEADLINE =
+        Comparator.comparingLong(Task::getDeadline).thenComparing(Comparator.naturalOrder());
+    
     private String name;
     private int priority;
+    private long deadline = NO_DEADLINE;
+    private final Runnable action;
+    
+    // Position in the IndexedTaskHeap holding this task, or -1 if it is in none
+    int heapIndex = -1;
+    
+    // Position in the insertion order of the TaskStore holding this task, or -1
+    int storeIndex = -1;
+    
+    // Id in the TaskSearchIndex holding this task, or -1 if it is in none
+    int searchId = -1;
+    
+    // When the task was added to a store with metrics enabled (System.nanoTime), or 0
+    long enqueuedNanos;
     
     /**
      * Constructor to create a new task
@@ -12,8 +39,19 @@ public class Task implements Comparable<Task> {
      * @param priority The task priority (1 = highest, 5 = lowest)
      */
     public Task(String name, int priority) {
+        this(name, priority, null);
+    }
+    
+    /**
+     * Constructor to create a new task that carries work to execute
+     * @param name The task description
+     * @param priority The task priority (1 = highest, 5 = lowest)
+     * @param action The work performed when the task is run, or null for none
+     */
+    public Task(String name, int priority, Runnable action) {
         this.name = name;
         this.priority = priority;
+        this.action = action;
     }
     
     /**
@@ -32,6 +70,48 @@ public class Task implements Comparable<Task> {
         return priority;
     }
     
+    /**
+     * Get the task deadline
+     * @return The deadline in milliseconds since the epoch, or NO_DEADLINE
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * Check whether the task has a deadline
+     * @return True if a deadline is set
+     */
+    public boolean hasDeadline() {
+        return deadline != NO_DEADLINE;
+    }
+    
+    /**
+     * Set the task deadline. Like the priority, this must not change while the
+     * task is held in a store ordered by deadline.
+     * @param deadline The deadline in milliseconds since the epoch, or NO_DEADLINE
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+    
+    /**
+     * Get the work carried by this task
+     * @return The runnable payload, or null if the task has none
+     */
+    public Runnable getAction() {
+        return action;
+    }
+    
+    /**
+     * Run the task's payload, if it has one
+     */
+    public void run() {
+        if (action != null) {
+            action.run();
+        }
+    }
+    
     /**
      * Set the task name
      * @param name The new task name
@@ -41,7 +121,8 @@ public class Task implements Comparable<Task> {
     }
     
     /**
-     * Set the task priority
+     * Set the task priority. For a task held in a TaskStore use
+     * TaskStore.changePriority instead, so the priority view is reordered.
      * @param priority The new task priority
      */
     public void setPriority(int priority) {
@@ -0,0 +1,547 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * TaskBulkIO reads and writes large task files in two line-based formats:
+ *
+ *   CSV         name,priority      (names containing commas or quotes are quoted, "" escapes a quote)
+ *   JSON lines  {"name":"...","priority":3}
+ *
+ * Every task takes exactly one line, which is what lets the file be split at
+ * any newline. Line breaks in a quoted CSV name are therefore written as \n
+ * and \r, and a backslash there as \\; unquoted names are taken literally.
+ *
+ * Import memory-maps the file, splits it into chunks at line boundaries and
+ * parses the chunks in parallel on the fork-join pool. The result keeps file
+ * order and is meant to be handed to TaskStore.addAll, which builds every view
+ * in one pass. Export streams through a buffered writer.
+ */
+public class TaskBulkIO {
+    public enum Format { CSV, JSON_LINES }
+
+    // Keep each mapped chunk well under the 2 GB limit of a single mapping
+    private static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+
+    /**
+     * Read every task in a file
+     * @param file The file to read
+     * @param format The file format
+     * @return The tasks in file order
+     * @throws IllegalArgumentException if a line cannot be parsed
+     */
+    public static List<Task> importTasks(Path file, Format format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size);
+            ParseTask root = new ParseTask(channel, format, bounds, 0, bounds.length - 1);
+            try {
+                return ForkJoinPool.commonPool().invoke(root);
+            } catch (ChunkFailure e) {
+                throw e.io;
+            }
+        }
+    }
+
+    /**
+     * Write tasks to a file, replacing it if it exists
+     * @param tasks The tasks to write
+     * @param file The file to write
+     * @param format The file format
+     */
+    public static void exportTasks(Iterable<Task> tasks, Path file, Format format) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            exportTasks(tasks, out, format);
+        }
+    }
+
+    /**
+     * Write tasks to a writer, one line per task
+     * @param tasks The tasks to write
+     * @param out The destination, which is not closed
+     * @param format The output format
+     */
+    public static void exportTasks(Iterable<Task> tasks, Writer out, Format format) throws IOException {
+        for (Task task : tasks) {
+            if (format == Format.CSV) {
+                writeCsvName(out, task.getName());
+                out.write(',');
+            } else {
+                out.write("{\"name\":\"");
+                writeJsonString(out, task.getName());
+                out.write("\",\"priority\":");
+            }
+            out.write(Integer.toString(task.getPriority()));
+            if (format == Format.JSON_LINES) {
+                out.write('}');
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Split the file into chunks that each start at the beginning of a line
+     */
+    private static long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_BYTES, size / (parallelism * 4L) + 1);
+        chunkSize = Math.min(chunkSize, MAX_CHUNK_BYTES);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = chunkSize;
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (position < size) {
+            // Move forward to just past the next newline so no line is split
+            long p = position;
+            long next = -1;
+            while (next < 0 && p < size) {
+                window.clear();
+                int read = channel.read(window, p);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        next = p + i + 1;
+                        break;
+                    }
+                }
+                p += read;
+            }
+            if (next < 0 || next >= size) {
+                break;
+            }
+            bounds.add(next);
+            position = next + chunkSize;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /** Splits the range of chunks in half until one chunk is left, then parses it */
+    private static class ParseTask extends RecursiveTask<List<Task>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Format format;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+
+        ParseTask(FileChannel channel, Format format, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.format = format;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Task> compute() {
+            if (to - from == 1) {
+                try {
+                    return parseChunk(channel, format, bounds[from], bounds[to]);
+                } catch (IOException e) {
+                    throw new ChunkFailure(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ParseTask left = new ParseTask(channel, format, bounds, from, mid);
+            ParseTask right = new ParseTask(channel, format, bounds, mid, to);
+            left.fork();
+            List<Task> rightResult = right.compute();
+            List<Task> result = left.join();
+            result.addAll(rightResult);
+            return result;
+        }
+    }
+
+    /** Carries an IOException out of a fork-join task */
+    private static class ChunkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final IOException io;
+
+        ChunkFailure(IOException io) {
+            super(io);
+            this.io = io;
+        }
+    }
+
+    private static List<Task> parseChunk(FileChannel channel, Format format, long start, long end)
+            throws IOException {
+        List<Task> tasks = new ArrayList<>((int) Math.min((end - start) / 16, 1 << 20));
+        if (end <= start) {
+            return tasks;
+        }
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = map.limit();
+        byte[] scratch = new byte[256];
+        int lineStart = 0;
+
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && map.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && map.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            if (contentEnd > lineStart) {
+                if (scratch.length < contentEnd - lineStart) {
+                    scratch = new byte[Math.max(scratch.length * 2, contentEnd - lineStart)];
+                }
+                Task task = format == Format.CSV
+                        ? parseCsvLine(map, lineStart, contentEnd, scratch)
+                        : parseJsonLine(map, lineStart, contentEnd, scratch);
+                if (task != null) {
+                    tasks.add(task);
+                } else if (start != 0 || lineStart != 0) {
+                    // Only the very first line may be a header such as "name,priority"
+                    throw new IllegalArgumentException("Bad priority in CSV line: " + text(map, lineStart, contentEnd));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return tasks;
+    }
+
+    private static Task parseCsvLine(MappedByteBuffer map, int start, int end, byte[] scratch) {
+        int comma = end - 1;
+        while (comma >= start && map.get(comma) != ',') {
+            comma--;
+        }
+        if (comma < start) {
+            throw new IllegalArgumentException("Missing priority in CSV line: " + text(map, start, end));
+        }
+        Integer priority = parseInt(map, comma + 1, end);
+        if (priority == null) {
+            return null;
+        }
+
+        byte[] name = scratch;
+        int length = 0;
+        if (comma > start && map.get(start) == '"') {
+            // Quoted name: "" stands for one quote character, and \n, \r and \\
+            // for a line feed, a carriage return and a backslash
+            for (int i = start + 1; i < comma - 1; i++) {
+                byte b = map.get(i);
+                if (b == '"') {
+                    i++;
+                } else if (b == '\\' && i + 1 < comma - 1) {
+                    b = map.get(++i);
+                    if (b == 'n') {
+                        b = '\n';
+                    } else if (b == 'r') {
+                        b = '\r';
+                    }
+                }
+                name[length++] = b;
+            }
+        } else {
+            for (int i = start; i < comma; i++) {
+                name[length++] = map.get(i);
+            }
+        }
+        return new Task(new String(name, 0, length, StandardCharsets.UTF_8), priority);
+    }
+
+    private static Task parseJsonLine(MappedByteBuffer map, int start, int end, byte[] scratch) {
+        String nameValue = null;
+        Integer priority = null;
+        int i = start;
+        while (i < end) {
+            byte b = map.get(i);
+            if (b != '"') {
+                i++;
+                continue;
+            }
+            // Read a key
+            int keyStart = i + 1;
+            int keyEnd = keyStart;
+            while (keyEnd < end && map.get(keyEnd) != '"') {
+                keyEnd++;
+            }
+            i = keyEnd + 1;
+            while (i < end && (map.get(i) == ':' || map.get(i) == ' ')) {
+                i++;
+            }
+            if (matches(map, keyStart, keyEnd, "name") && i < end && map.get(i) == '"') {
+                byte[] name = scratch;
+                int length = 0;
+                i++;
+                while (i < end && map.get(i) != '"') {
+                    byte c = map.get(i++);
+                    if (c == '\\') {
+                        c = i < end ? map.get(i++) : 0;
+                        switch (c) {
+                            case '"':
+                            case '\\':
+                            case '/':
+                                break;
+                            case 'b':
+                                c = '\b';
+                                break;
+                            case 'f':
+                                c = '\f';
+                                break;
+                            case 'n':
+                                c = '\n';
+                                break;
+                            case 'r':
+                                c = '\r';
+                                break;
+                            case 't':
+                                c = '\t';
+                                break;
+                            case 'u': {
+                                int codePoint = hex4(map, i, end);
+                                if (codePoint < 0) {
+                                    throw new IllegalArgumentException("Bad escape in JSON line: " + text(map, start, end));
+                                }
+                                i += 4;
+                                // A character outside the BMP is written as two escaped surrogates
+                                if (Character.isHighSurrogate((char) codePoint) && i + 6 <= end
+                                        && map.get(i) == '\\' && map.get(i + 1) == 'u') {
+                                    int low = hex4(map, i + 2, end);
+                                    if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                                        codePoint = Character.toCodePoint((char) codePoint, (char) low);
+                                        i += 6;
+                                    }
+                                }
+                                if (Character.isSurrogate((char) codePoint) && codePoint <= Character.MAX_VALUE) {
+                                    codePoint = 0xFFFD; // UTF-8 cannot hold an unpaired surrogate
+                                }
+                                length = putUtf8(name, length, codePoint);
+                                continue;
+                            }
+                            default:
+                                throw new IllegalArgumentException("Bad escape in JSON line: " + text(map, start, end));
+                        }
+                    }
+                    name[length++] = c;
+                }
+                nameValue = new String(name, 0, length, StandardCharsets.UTF_8);
+                i++;
+            } else if (matches(map, keyStart, keyEnd, "priority")) {
+                int numberEnd = i;
+                while (numberEnd < end && (map.get(numberEnd) == '-' || (map.get(numberEnd) >= '0' && map.get(numberEnd) <= '9'))) {
+                    numberEnd++;
+                }
+                priority = parseInt(map, i, numberEnd);
+                i = numberEnd;
+            }
+        }
+        if (nameValue == null || priority == null) {
+            throw new IllegalArgumentException("Missing name or priority in JSON line: " + text(map, start, end));
+        }
+        return new Task(nameValue, priority);
+    }
+
+    /** Return the value of four hex digits at start, or -1 if they are not */
+    private static int hex4(MappedByteBuffer map, int start, int end) {
+        if (start + 4 > end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit((char) map.get(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /** Write a code point as UTF-8 at length and return the new length */
+    private static int putUtf8(byte[] bytes, int length, int codePoint) {
+        if (codePoint < 0x80) {
+            bytes[length++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            bytes[length++] = (byte) (0xC0 | codePoint >> 6);
+            bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            bytes[length++] = (byte) (0xE0 | codePoint >> 12);
+            bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+            bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+        return length;
+    }
+
+    /**
+     * Parse a decimal int, or return null if the text is not a number
+     * @throws IllegalArgumentException if the number does not fit in an int
+     */
+    private static Integer parseInt(MappedByteBuffer map, int start, int end) {
+        while (start < end && map.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && map.get(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        boolean negative = map.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            return null;
+        }
+        // Accumulate negatively, since Integer.MIN_VALUE has no positive counterpart
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int value = 0;
+        boolean overflow = false;
+        for (; i < end; i++) {
+            int digit = map.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            if (value < limit / 10 || value * 10 < limit + digit) {
+                overflow = true;
+            } else {
+                value = value * 10 - digit;
+            }
+        }
+        if (overflow) {
+            throw new IllegalArgumentException("Priority out of range: " + text(map, start, end));
+        }
+        return negative ? value : -value;
+    }
+
+    private static boolean matches(MappedByteBuffer map, int start, int end, String key) {
+        if (end - start != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (map.get(start + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String text(MappedByteBuffer map, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = map.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeCsvName(Writer out, String name) throws IOException {
+        if (name.indexOf(',') < 0 && name.indexOf('"') < 0 && name.indexOf('\n') < 0
+                && name.indexOf('\r') < 0) {
+            out.write(name);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\"\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private static void writeJsonString(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+    }
+
+    // Demonstration: export a large backlog, import it again and load it into a store
+    public static void main(String[] args) throws IOException {
+        final int taskCount = 1_000_000;
+        List<Task> tasks = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            // Every thousandth name needs quoting, escaping or both
+            String name = i % 1000 == 0 ? "Task \"number\",\n" + i + "\\r\r" : "Task number " + i;
+            tasks.add(new Task(name, 1 + i % 5));
+        }
+
+        Path file = Files.createTempFile("tasks", ".csv");
+        long startTime = System.nanoTime();
+        exportTasks(tasks, file, Format.CSV);
+        long exportTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        List<Task> imported = importTasks(file, Format.CSV);
+        long importTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        TaskStore store = new TaskStore();
+        store.addAll(imported);
+        long loadTime = System.nanoTime() - startTime;
+
+        System.out.println("=== BULK IMPORT/EXPORT DEMONSTRATION ===");
+        System.out.println("Exported " + taskCount + " tasks in " + exportTime / 1_000_000 + " ms");
+        System.out.println("Parsed " + imported.size() + " tasks in " + importTime / 1_000_000 + " ms");
+        System.out.println("Loaded into store in " + loadTime / 1_000_000 + " ms");
+        System.out.println("Highest priority task: " + store.peekPriority());
+        System.out.println("Round trip matches: " + tasks.equals(imported));
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,395 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TaskExecutor runs the payload of submitted tasks on a pool of worker threads.
+ * Each worker owns one BoundedTaskQueue shard. Producers spread tasks across the
+ * shards, workers take batches from their own shard and steal from the other
+ * shards when theirs is empty, so no single lock is shared by every thread.
+ * Priority order is kept within each shard.
+ *
+ * A worker claims the tasks of its batch one at a time, so shutdownNow can
+ * claim the rest of every batch and return those tasks with the queued ones.
+ */
+public class TaskExecutor {
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    // How long an idle worker waits on its own shard before checking the others again
+    private static final long IDLE_WAIT_MICROS = 200;
+
+    private final BoundedTaskQueue[] shards;
+    private final Thread[] workers;
+    private final WorkerBatch[] batches;
+    private final int batchSize;
+    private final CountDownLatch terminated;
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile Throwable lastFailure;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private volatile boolean shutdown = false;
+    private volatile boolean stopNow = false;
+
+    /**
+     * Create an executor with one worker per available processor
+     * @param capacity The total number of tasks that can wait in the executor
+     */
+    public TaskExecutor(int capacity) {
+        this(Runtime.getRuntime().availableProcessors(), capacity, DEFAULT_BATCH_SIZE, null);
+    }
+
+    /**
+     * Create an executor
+     * @param workerCount The number of worker threads (and queue shards)
+     * @param capacity The total number of tasks that can wait in the executor
+     * @param batchSize The most tasks a worker takes from a queue at once
+     * @param threadFactory The factory used to start workers, or null for daemon
+     *                      platform threads. On Java 21+ pass
+     *                      Thread.ofVirtual().factory() to run workers on virtual threads.
+     */
+    public TaskExecutor(int workerCount, int capacity, int batchSize, ThreadFactory threadFactory) {
+        if (workerCount <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Worker count and batch size must be positive");
+        }
+        if (capacity < workerCount) {
+            throw new IllegalArgumentException("Capacity must be at least the worker count");
+        }
+        this.batchSize = batchSize;
+        this.shards = new BoundedTaskQueue[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            // Split the capacity so the shards together hold exactly capacity tasks
+            shards[i] = new BoundedTaskQueue(capacity / workerCount + (i < capacity % workerCount ? 1 : 0));
+        }
+        this.terminated = new CountDownLatch(workerCount);
+        this.workers = new Thread[workerCount];
+        this.batches = new WorkerBatch[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            batches[i] = new WorkerBatch(batchSize);
+        }
+        ThreadFactory factory = threadFactory != null ? threadFactory : new WorkerThreadFactory();
+        for (int i = 0; i < workerCount; i++) {
+            final int shard = i;
+            workers[i] = factory.newThread(() -> runWorker(shard));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Submit a task, waiting while the executor is full
+     * @param task The task to run
+     * @throws IllegalStateException if the executor has been shut down
+     */
+    public void submit(Task task) throws InterruptedException {
+        if (shutdown) {
+            throw new IllegalStateException("Executor is shut down");
+        }
+        int start = pickShard();
+        // Prefer any shard with room before blocking on the chosen one
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[(start + i) % shards.length].offer(task)) {
+                return;
+            }
+        }
+        shards[start].put(task);
+    }
+
+    /**
+     * Submit a task if there is room anywhere in the executor, without waiting
+     * @param task The task to run
+     * @return True if the task was accepted, false if every queue is full
+     * @throws IllegalStateException if the executor has been shut down
+     */
+    public boolean trySubmit(Task task) {
+        if (shutdown) {
+            throw new IllegalStateException("Executor is shut down");
+        }
+        int start = pickShard();
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[(start + i) % shards.length].offer(task)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop accepting tasks. Tasks already submitted still run before the workers exit.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (BoundedTaskQueue shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Stop accepting tasks and discard the tasks that have not started yet,
+     * including the rest of the batches workers have already taken
+     * @return The tasks that were waiting and will never run
+     */
+    public List<Task> shutdownNow() {
+        stopNow = true;
+        shutdown();
+        List<Task> pending = new ArrayList<>();
+        for (WorkerBatch batch : batches) {
+            batch.close(pending);
+        }
+        // No worker can take more tasks now, so the queues are drained for good
+        for (BoundedTaskQueue shard : shards) {
+            shard.drainTo(pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Wait for every worker to finish after a shutdown
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return True if all workers finished, false if the time ran out first
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Get the number of tasks waiting to run
+     * @return The total size of all queues
+     */
+    public int pendingCount() {
+        int total = 0;
+        for (BoundedTaskQueue shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of tasks that finished normally
+     * @return The completed task count
+     */
+    public long completedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Get the number of tasks whose payload threw an exception or error
+     * @return The failed task count
+     */
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Get what the most recent failed task threw
+     * @return The exception or error, or null if no task has failed
+     */
+    public Throwable lastFailure() {
+        return lastFailure;
+    }
+
+    private int pickShard() {
+        // Random placement keeps producers from all hitting the same shard lock
+        return ThreadLocalRandom.current().nextInt(shards.length);
+    }
+
+    private void runWorker(int home) {
+        WorkerBatch owned = batches[home];
+        Task[] batch = owned.tasks;
+        try {
+            while (!stopNow && owned.startFilling()) {
+                int count = 0;
+                try {
+                    count = shards[home].drainTo(batch, batchSize);
+                    if (count == 0) {
+                        count = steal(home, batch);
+                    }
+                    if (count == 0) {
+                        count = shards[home].pollBatch(batch, batchSize, IDLE_WAIT_MICROS, TimeUnit.MICROSECONDS);
+                    }
+                } finally {
+                    owned.filled(Math.max(count, 0));
+                }
+                if (count < 0 && allShardsDrained()) {
+                    break; // Shut down and nothing left anywhere
+                }
+                Task task;
+                while ((task = owned.claim()) != null) {
+                    execute(task);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    private int steal(int home, Task[] batch) {
+        // Take only half a batch so the victim keeps most of its own work
+        int stealSize = Math.max(1, batchSize / 2);
+        for (int i = 1; i < shards.length; i++) {
+            int count = shards[(home + i) % shards.length].drainTo(batch, stealSize);
+            if (count > 0) {
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    private boolean allShardsDrained() {
+        for (BoundedTaskQueue shard : shards) {
+            if (shard.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void execute(Task task) {
+        try {
+            task.run();
+            completedCount.incrementAndGet();
+        } catch (Throwable e) {
+            // Errors too: a payload's AssertionError or StackOverflowError must not
+            // end the worker and leave its shard to be drained only by stealing
+            lastFailure = e;
+            failedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * The batch a worker took from the queues. The worker and shutdownNow both
+     * claim tasks by moving next forward, so each task is either run or returned.
+     */
+    private static class WorkerBatch {
+        // Values of next while the worker refills the batch, and once shutdownNow took the rest
+        private static final int FILLING = -1;
+        private static final int CLOSED = Integer.MAX_VALUE;
+
+        final Task[] tasks;
+        private volatile int count = 0;
+        private final AtomicInteger next = new AtomicInteger();
+
+        WorkerBatch(int batchSize) {
+            tasks = new Task[batchSize];
+        }
+
+        /** Take the batch back to refill it once every task is claimed; false if closed */
+        boolean startFilling() {
+            return next.compareAndSet(count, FILLING);
+        }
+
+        /** Publish a refilled batch of count tasks */
+        void filled(int count) {
+            this.count = count;
+            next.set(0);
+        }
+
+        /** Claim the next task to run, or return null if the batch is used up or closed */
+        Task claim() {
+            while (true) {
+                int i = next.get();
+                if (i >= count) {
+                    return null;
+                }
+                if (next.compareAndSet(i, i + 1)) {
+                    Task task = tasks[i];
+                    tasks[i] = null;
+                    return task;
+                }
+            }
+        }
+
+        /** Claim every unrun task into pending and stop the worker taking more */
+        void close(List<Task> pending) {
+            while (true) {
+                int i = next.get();
+                if (i == CLOSED) {
+                    return;
+                }
+                if (i == FILLING) {
+                    Thread.yield(); // Refilling is short: close() has woken a waiting poll
+                    continue;
+                }
+                if (next.compareAndSet(i, CLOSED)) {
+                    for (int j = i; j < count; j++) {
+                        pending.add(tasks[j]);
+                        tasks[j] = null;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Thread factory used when the caller does not supply one */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "task-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    // Demonstration: run a large number of small tasks and report throughput
+    public static void main(String[] args) throws InterruptedException {
+        final int taskCount = 2_000_000;
+        final int producers = 4;
+        TaskExecutor executor = new TaskExecutor(64 * 1024);
+        AtomicLong checksum = new AtomicLong();
+
+        System.out.println("=== TASK EXECUTOR DEMONSTRATION ===");
+        System.out.println("Workers: " + executor.workers.length + ", producers: " + producers);
+
+        long startTime = System.nanoTime();
+        Thread[] producerThreads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            producerThreads[p] = new Thread(() -> {
+                try {
+                    for (int i = id; i < taskCount; i += producers) {
+                        final int value = i;
+                        executor.submit(new Task("task-" + i, 1 + i % 5, () -> checksum.addAndGet(value)));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producerThreads[p].start();
+        }
+        for (Thread producer : producerThreads) {
+            producer.join();
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - startTime;
+
+        System.out.println("Completed: " + executor.completedCount() + ", failed: " + executor.failedCount());
+        System.out.println("Checksum correct: " + (checksum.get() == (long) taskCount * (taskCount - 1) / 2));
+        System.out.println(String.format("Throughput: %.0f tasks/second", taskCount / (elapsed / 1e9)));
+
+        // A payload that throws an Error is counted as failed and its worker keeps going
+        TaskExecutor single = new TaskExecutor(1, 16, DEFAULT_BATCH_SIZE, null);
+        single.submit(new Task("broken", 1, () -> {
+            throw new AssertionError("broken payload");
+        }));
+        for (int i = 0; i < 10; i++) {
+            single.submit(new Task("after-" + i, 2, () -> { }));
+        }
+        single.shutdown();
+        boolean finished = single.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.println("After an Error: completed " + single.completedCount() + ", failed "
+                + single.failedCount() + " (" + single.lastFailure() + "), worker finished cleanly: " + finished);
+    }
+}
@@ -1,4 +1,7 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import javax.management.JMException;
 
 /**
  * TaskManager demonstrates the use of different data structures
@@ -6,14 +9,22 @@ import java.util.*;
  */
 public class TaskManager {
     
-    public static void main(String[] args) {
-        // Create four different data structures to manage tasks
-        ArrayList<Task> allTasks = new ArrayList<>();
-        Stack<Task> taskStack = new Stack<>();
-        Queue<Task> taskQueue = new LinkedList<>();
-        PriorityQueue<Task> priorityTasks = new PriorityQueue<>();
+    public static void main(String[] args) throws IOException {
+        // One store keeps four different data structures of tasks in step.
+        // Passing a directory makes the store durable across runs.
+        TaskStore store = args.length > 0 ? TaskStore.open(Paths.get(args[0])) : new TaskStore();
+        // Telemetry is also visible in JConsole under TaskStore/TaskStoreMetrics while running
+        TaskStoreMetrics metrics = store.enableMetrics();
+        try {
+            metrics.register("TaskManager");
+        } catch (JMException e) {
+            System.out.println("Metrics are not available over JMX: " + e.getMessage());
+        }
         
         System.out.println("=== TASK MANAGER DEMONSTRATION ===\n");
+        if (store.size() > 0) {
+            System.out.println("Recovered " + store.size() + " saved tasks.\n");
+        }
         
         // Create predefined tasks with different priorities
         Task task1 = new Task("Write report", 2);
@@ -24,21 +35,21 @@ public class TaskManager {
         
         // Add tasks to all data structures
         System.out.println("Adding tasks to all data structures...");
-        addTaskToAllStructures(task1, allTasks, taskStack, taskQueue, priorityTasks);
-        addTaskToAllStructures(task2, allTasks, taskStack, taskQueue, priorityTasks);
-        addTaskToAllStructures(task3, allTasks, taskStack, taskQueue, priorityTasks);
-        addTaskToAllStructures(task4, allTasks, taskStack, taskQueue, priorityTasks);
-        addTaskToAllStructures(task5, allTasks, taskStack, taskQueue, priorityTasks);
+        addTaskToAllStructures(task1, store);
+        addTaskToAllStructures(task2, store);
+        addTaskToAllStructures(task3, store);
+        addTaskToAllStructures(task4, store);
+        addTaskToAllStructures(task5, store);
         
         System.out.println("Tasks added successfully!\n");
         
         // Display all structures before undo
         System.out.println("=== BEFORE UNDO OPERATION ===");
-        displayAllStructures(allTasks, taskStack, taskQueue, priorityTasks);
+        displayAllStructures(store);
         
         // Perform undo operation (remove the most recently added task)
         System.out.println("\n=== PERFORMING UNDO OPERATION ===");
-        Task undoneTask = performUndo(allTasks, taskStack, taskQueue, priorityTasks);
+        Task undoneTask = store.undo();
         if (undoneTask != null) {
             System.out.println("Undo Last Task: " + undoneTask);
         } else {
@@ -47,126 +58,101 @@ public class TaskManager {
         
         // Display all structures after undo
         System.out.println("\n=== AFTER UNDO OPERATION ===");
-        displayAllStructures(allTasks, taskStack, taskQueue, priorityTasks);
+        displayAllStructures(store);
         
         // Demonstrate additional operations
         System.out.println("\n=== ADDITIONAL DEMONSTRATIONS ===");
-        demonstrateDataStructureBehaviors(allTasks, taskStack, taskQueue, priorityTasks);
+        demonstrateDataStructureBehaviors(store);
+        
+        if (args.length > 0) {
+            // Fold the log into a snapshot so the next start-up is fast
+            store.checkpoint();
+        }
+        try {
+            metrics.unregister();
+        } catch (JMException e) {
+            // The process is about to exit anyway
+        }
+        store.close();
     }
     
     /**
      * Add a task to all data structures
      */
-    private static void addTaskToAllStructures(Task task, ArrayList<Task> allTasks, 
-                                             Stack<Task> taskStack, Queue<Task> taskQueue, 
-                                             PriorityQueue<Task> priorityTasks) {
-        allTasks.add(task);
-        taskStack.push(task);
-        taskQueue.offer(task);
-        priorityTasks.offer(task);
+    private static void addTaskToAllStructures(Task task, TaskStore store) {
+        store.addTask(task);
         System.out.println("  Added: " + task);
     }
     
-    /**
-     * Perform undo operation by removing the most recently added task
-     */
-    private static Task performUndo(ArrayList<Task> allTasks, Stack<Task> taskStack, 
-                                  Queue<Task> taskQueue, PriorityQueue<Task> priorityTasks) {
-        if (taskStack.isEmpty()) {
-            return null;
-        }
-        
-        // Use stack to get the most recently added task
-        Task lastTask = taskStack.pop();
-        
-        // Remove from other structures
-        allTasks.remove(lastTask);
-        taskQueue.remove(lastTask);  // Remove specific task from queue
-        priorityTasks.remove(lastTask);  // Remove specific task from priority queue
-        
-        return lastTask;
-    }
-    
     /**
      * Display contents of all data structures
      */
-    private static void displayAllStructures(ArrayList<Task> allTasks, Stack<Task> taskStack, 
-                                           Queue<Task> taskQueue, PriorityQueue<Task> priorityTasks) {
+    private static void displayAllStructures(TaskStore store) throws IOException {
         // ArrayList - maintains insertion order
-        System.out.println("All Tasks (ArrayList): " + formatTaskList(allTasks));
+        printTaskList("All Tasks (ArrayList): ", store.getAllTasks());
         
         // Stack - LIFO (Last In, First Out)
-        System.out.println("Tasks in Stack (LIFO): " + formatTaskList(taskStack));
+        printTaskList("Tasks in Stack (LIFO): ", store.getTaskStack());
         
         // Queue - FIFO (First In, First Out)  
-        System.out.println("Tasks in Queue order: " + formatTaskList(taskQueue));
+        printTaskList("Tasks in Queue order: ", store.getTaskQueue());
         
-        // PriorityQueue - sorted by priority (lowest number = highest priority)
-        System.out.println("Tasks in Priority order: " + formatPriorityQueue(priorityTasks));
+        // Priority view - sorted by priority (lowest number = highest priority),
+        // read in order straight from the heap without copying it
+        System.out.print("Tasks in Priority order: ");
+        store.renderPriorityOrder(System.out, 0, Integer.MAX_VALUE);
+        System.out.println();
     }
     
     /**
-     * Format a collection of tasks for display
+     * Print a collection of tasks after a label, without building the whole line first
      */
-    private static String formatTaskList(Collection<Task> tasks) {
-        if (tasks.isEmpty()) {
-            return "[No tasks]";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        for (Task task : tasks) {
-            if (sb.length() > 0) {
-                sb.append(" ");
-            }
-            sb.append(task.toString());
-        }
-        return sb.toString();
-    }
-    
-    /**
-     * Format PriorityQueue to show tasks in priority order without modifying the queue
-     */
-    private static String formatPriorityQueue(PriorityQueue<Task> priorityQueue) {
-        if (priorityQueue.isEmpty()) {
-            return "[No tasks]";
-        }
-        
-        // Create a copy to avoid modifying the original
-        PriorityQueue<Task> copy = new PriorityQueue<>(priorityQueue);
-        StringBuilder sb = new StringBuilder();
-        
-        while (!copy.isEmpty()) {
-            if (sb.length() > 0) {
-                sb.append(" ");
-            }
-            sb.append(copy.poll().toString());
-        }
-        return sb.toString();
+    private static void printTaskList(String label, Collection<Task> tasks) throws IOException {
+        System.out.print(label);
+        TaskRenderer.render(System.out, tasks);
+        System.out.println();
     }
     
     /**
      * Demonstrate specific behaviors of each data structure
      */
-    private static void demonstrateDataStructureBehaviors(ArrayList<Task> allTasks, Stack<Task> taskStack, 
-                                                        Queue<Task> taskQueue, PriorityQueue<Task> priorityTasks) {
+    private static void demonstrateDataStructureBehaviors(TaskStore store) {
         System.out.println("Stack peek (top element): " + 
-                          (taskStack.isEmpty() ? "Stack is empty" : taskStack.peek()));
+                          (store.peekStack() == null ? "Stack is empty" : store.peekStack()));
         
         System.out.println("Queue peek (front element): " + 
-                          (taskQueue.isEmpty() ? "Queue is empty" : taskQueue.peek()));
+                          (store.peekQueue() == null ? "Queue is empty" : store.peekQueue()));
         
         System.out.println("Priority Queue peek (highest priority): " + 
-                          (priorityTasks.isEmpty() ? "Priority queue is empty" : priorityTasks.peek()));
+                          (store.peekPriority() == null ? "Priority queue is empty" : store.peekPriority()));
         
-        System.out.println("ArrayList size: " + allTasks.size());
-        System.out.println("Stack size: " + taskStack.size());
-        System.out.println("Queue size: " + taskQueue.size());
-        System.out.println("Priority Queue size: " + priorityTasks.size());
+        System.out.println("ArrayList size: " + store.getAllTasks().size());
+        System.out.println("Stack size: " + store.getTaskStack().size());
+        System.out.println("Queue size: " + store.getTaskQueue().size());
+        System.out.println("Priority Queue size: " + store.getPriorityTasks().size());
         
         // Show ArrayList access by index
+        List<Task> allTasks = store.getAllTasks();
         if (!allTasks.isEmpty()) {
             System.out.println("First task in ArrayList: " + allTasks.get(0));
             System.out.println("Last task in ArrayList: " + allTasks.get(allTasks.size() - 1));
         }
+        
+        // Telemetry collected while the demonstration ran
+        TaskStoreMetrics metrics = store.getMetrics();
+        if (metrics != null) {
+            long[] depth = metrics.getQueueDepthByPriority();
+            StringBuilder depths = new StringBuilder();
+            for (int priority = 0; priority < depth.length; priority++) {
+                if (depth[priority] > 0) {
+                    depths.append(depths.length() == 0 ? "" : ", ").append("P").append(priority).append("=").append(depth[priority]);
+                }
+            }
+            System.out.println("Queue depth by priority: " + depths);
+            System.out.println("Adds: " + metrics.getAddCount() + ", removes: " + metrics.getRemoveCount()
+                    + ", undos: " + metrics.getUndoCount() + ", heap operations: " + metrics.getHeapOperationCount());
+            System.out.printf("Wait time until removal: %d measured, max %.3f ms%n",
+                    metrics.getWaitTimeCount(), metrics.getWaitTimeMaxMillis());
+        }
     }
 }
\ No newline at end of file
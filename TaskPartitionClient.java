@@ -0,0 +1,342 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TaskPartitionClient spreads tasks over several TaskPartitionNode processes and
+ * pulls them back out. A task's partition is chosen by hashing its name, and
+ * each client has a home partition it consumes from. When the home partition
+ * cannot fill a batch, the client steals up to half of the fullest other
+ * partition.
+ *
+ * Requests for different nodes are all written before any reply is read, and a
+ * large enqueue is split into several frames sent back to back, so a batch pays
+ * for about one round trip rather than one per node or per frame.
+ *
+ * A client is meant to be used by one consumer thread; its methods are
+ * synchronized only to keep shared use safe.
+ */
+public class TaskPartitionClient implements Closeable {
+    private final SocketChannel[] nodes;
+    private final int home;
+    private final int maxBatch;
+    private ByteBuffer request = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer reply = ByteBuffer.allocate(64 * 1024);
+    private long stolen = 0;
+
+    /**
+     * Connect to every partition
+     * @param addresses The nodes, in partition order
+     * @param home The partition this client consumes from first
+     * @param maxBatch The most tasks sent in one enqueue frame
+     */
+    public TaskPartitionClient(List<InetSocketAddress> addresses, int home, int maxBatch) throws IOException {
+        if (home < 0 || home >= addresses.size()) {
+            throw new IllegalArgumentException("Home partition out of range: " + home);
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        }
+        this.home = home;
+        this.maxBatch = maxBatch;
+        this.nodes = new SocketChannel[addresses.size()];
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = SocketChannel.open(addresses.get(i));
+                nodes[i].setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Return the partition a task belongs to. String.hashCode is fixed by the
+     * language, so every process agrees on the result.
+     * @param task The task
+     * @param partitions The number of partitions
+     * @return A partition number in [0, partitions)
+     */
+    public static int partitionOf(Task task, int partitions) {
+        return Math.floorMod(task.getName().hashCode(), partitions);
+    }
+
+    /** Return the number of partitions */
+    public int partitionCount() {
+        return nodes.length;
+    }
+
+    /** Return the number of tasks this client has taken from other partitions */
+    public synchronized long getStolenCount() {
+        return stolen;
+    }
+
+    /**
+     * Send tasks to their partitions
+     * @param tasks The tasks to enqueue
+     */
+    public synchronized void enqueue(Collection<Task> tasks) throws IOException {
+        List<List<Task>> groups = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (Task task : tasks) {
+            groups.get(partitionOf(task, nodes.length)).add(task);
+        }
+        // Write every frame to every node first, then collect the replies
+        int[] frames = new int[nodes.length];
+        for (int node = 0; node < nodes.length; node++) {
+            List<Task> group = groups.get(node);
+            request.clear();
+            for (int from = 0; from < group.size(); from += maxBatch) {
+                int to = Math.min(group.size(), from + maxBatch);
+                request = TaskWireProtocol.ensure(request, 9);
+                int start = TaskWireProtocol.beginFrame(request, TaskWireProtocol.OP_ENQUEUE);
+                request.putInt(to - from);
+                for (int i = from; i < to; i++) {
+                    request = TaskWireProtocol.putTask(request, group.get(i));
+                }
+                TaskWireProtocol.endFrame(request, start);
+                frames[node]++;
+            }
+            send(node);
+        }
+        for (int node = 0; node < nodes.length; node++) {
+            for (int i = 0; i < frames[node]; i++) {
+                receive(node).getInt();
+            }
+        }
+    }
+
+    /**
+     * Take up to max tasks, best priority first within each partition. The home
+     * partition is tried first; if it runs short, the rest is stolen from the
+     * fullest other partition. A node replies with at most MAX_FRAME bytes, so a
+     * very large request may come back short while tasks remain; call again.
+     * @param max The most tasks to return
+     * @return The tasks taken, empty if every partition is empty
+     */
+    public synchronized List<Task> dequeue(int max) throws IOException {
+        List<Task> batch = new ArrayList<>(Math.min(max, 1024));
+        take(home, max, batch);
+        if (batch.size() < max && nodes.length > 1) {
+            int[] sizes = sizes();
+            int victim = -1;
+            for (int node = 0; node < nodes.length; node++) {
+                if (node != home && sizes[node] > 0 && (victim < 0 || sizes[node] > sizes[victim])) {
+                    victim = node;
+                }
+            }
+            if (victim >= 0) {
+                // Take at most half, so the victim's own consumer still has work
+                int want = Math.min(max - batch.size(), (sizes[victim] + 1) / 2);
+                int before = batch.size();
+                take(victim, want, batch);
+                stolen += batch.size() - before;
+            }
+        }
+        return batch;
+    }
+
+    /** Return the total number of queued tasks across all partitions */
+    public synchronized long size() throws IOException {
+        long total = 0;
+        for (int size : sizes()) {
+            total += size;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (SocketChannel node : nodes) {
+            if (node == null) {
+                continue;
+            }
+            try {
+                node.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private int[] sizes() throws IOException {
+        for (int node = 0; node < nodes.length; node++) {
+            request.clear();
+            TaskWireProtocol.endFrame(request, TaskWireProtocol.beginFrame(request, TaskWireProtocol.OP_SIZE));
+            send(node);
+        }
+        int[] sizes = new int[nodes.length];
+        for (int node = 0; node < nodes.length; node++) {
+            sizes[node] = receive(node).getInt();
+        }
+        return sizes;
+    }
+
+    private void take(int node, int max, List<Task> batch) throws IOException {
+        request.clear();
+        int start = TaskWireProtocol.beginFrame(request, TaskWireProtocol.OP_DEQUEUE);
+        request.putInt(max);
+        TaskWireProtocol.endFrame(request, start);
+        send(node);
+        ByteBuffer body = receive(node);
+        int count = body.getInt();
+        for (int i = 0; i < count; i++) {
+            batch.add(TaskWireProtocol.getTask(body));
+        }
+    }
+
+    private void send(int node) throws IOException {
+        request.flip();
+        while (request.hasRemaining()) {
+            nodes[node].write(request);
+        }
+        request.clear();
+    }
+
+    /** Read one reply frame and return its body, positioned after the status code */
+    private ByteBuffer receive(int node) throws IOException {
+        reply.clear().limit(4);
+        readFully(node);
+        int length = reply.getInt(0);
+        TaskWireProtocol.checkLength(length);
+        if (reply.capacity() < length) {
+            reply = ByteBuffer.allocate(Math.max(length, reply.capacity() * 2));
+        }
+        reply.clear().limit(length);
+        readFully(node);
+        reply.flip();
+        byte status = reply.get();
+        if (status != TaskWireProtocol.STATUS_OK) {
+            throw new ProtocolException("Node " + node + " returned status " + status);
+        }
+        return reply;
+    }
+
+    private void readFully(int node) throws IOException {
+        while (reply.hasRemaining()) {
+            if (nodes[node].read(reply) < 0) {
+                throw new IOException("Node " + node + " closed the connection");
+            }
+        }
+    }
+
+    // Demonstration: three node processes on localhost, two consumers
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== PARTITIONED TASK QUEUE DEMONSTRATION ===");
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            if (args.length > 0) {
+                // Use nodes that are already running: TaskPartitionClient <port> <port> ...
+                for (String port : args) {
+                    addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port)));
+                }
+            } else {
+                String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+                for (int i = 0; i < 3; i++) {
+                    Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "TaskPartitionNode")
+                            .redirectError(ProcessBuilder.Redirect.INHERIT)
+                            .start();
+                    processes.add(process);
+                    String line = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                    if (line == null || !line.startsWith("LISTENING ")) {
+                        throw new IOException("Node process failed to start: " + line);
+                    }
+                    int port = Integer.parseInt(line.substring("LISTENING ".length()).trim());
+                    addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                }
+                System.out.println("Started " + processes.size() + " node processes on ports " + addresses);
+            }
+
+            final int taskCount = 200_000;
+            List<Task> tasks = new ArrayList<>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                tasks.add(new Task("Task " + i, 1 + i % 5));
+            }
+            try (TaskPartitionClient producer = new TaskPartitionClient(addresses, 0, 4096)) {
+                long startTime = System.nanoTime();
+                producer.enqueue(tasks);
+                long elapsed = System.nanoTime() - startTime;
+                System.out.println("Enqueued " + producer.size() + " tasks in " + elapsed / 1_000_000 + " ms");
+            }
+
+            // Partition 2 has no consumer, so its tasks can only leave by being stolen
+            AtomicInteger consumed = new AtomicInteger();
+            List<Thread> consumers = new ArrayList<>();
+            for (int home = 0; home < 2; home++) {
+                final int partition = home;
+                Thread consumer = new Thread(() -> {
+                    try (TaskPartitionClient client = new TaskPartitionClient(addresses, partition, 4096)) {
+                        int taken = 0;
+                        List<Task> batch;
+                        while (!(batch = client.dequeue(1000)).isEmpty()) {
+                            taken += batch.size();
+                        }
+                        consumed.addAndGet(taken);
+                        System.out.println("Consumer for partition " + partition + " took " + taken
+                                + " tasks, " + client.getStolenCount() + " of them stolen");
+                    } catch (IOException e) {
+                        System.err.println("Consumer failed: " + e);
+                    }
+                });
+                consumers.add(consumer);
+                consumer.start();
+            }
+            for (Thread consumer : consumers) {
+                consumer.join();
+            }
+            System.out.println("Consumed " + consumed.get() + " of " + taskCount + " tasks");
+
+            // A dequeue whose reply would pass MAX_FRAME comes back short, losing nothing
+            StringBuilder longName = new StringBuilder();
+            while (longName.length() < 200) {
+                longName.append("long task name ");
+            }
+            List<Task> bigTasks = new ArrayList<>();
+            for (int i = 0; i < 100_000; i++) {
+                bigTasks.add(new Task(longName + " " + i, 1 + i % 5));
+            }
+            try (TaskPartitionNode node = new TaskPartitionNode(0);
+                    TaskPartitionClient client = new TaskPartitionClient(
+                            Collections.singletonList(new InetSocketAddress(InetAddress.getLoopbackAddress(), node.getPort())), 0, 4096)) {
+                client.enqueue(bigTasks);
+                int first = client.dequeue(bigTasks.size()).size();
+                long left = client.size();
+                int total = first;
+                List<Task> batch;
+                while (!(batch = client.dequeue(bigTasks.size())).isEmpty()) {
+                    total += batch.size();
+                }
+                System.out.println("Oversized dequeue returned " + first + " tasks, " + left + " left queued; "
+                        + total + " of " + bigTasks.size() + " received in all: " + (total == bigTasks.size() ? "OK" : "FAIL"));
+            }
+        } finally {
+            for (Process process : processes) {
+                // Closing its input tells the node to exit
+                process.getOutputStream().close();
+                process.waitFor();
+            }
+        }
+    }
+}
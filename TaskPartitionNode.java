@@ -0,0 +1,234 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * TaskPartitionNode owns one partition of a distributed task queue. It keeps its
+ * tasks in a local priority heap and serves TaskWireProtocol requests on a
+ * loopback socket.
+ *
+ * One selector thread does all the work, so the heap needs no locking. Every
+ * complete frame in a read is handled before replying, and replies are written
+ * in one go, so pipelined requests cost one system call per batch instead of one
+ * per request.
+ */
+public class TaskPartitionNode implements Closeable {
+    private final IndexedTaskHeap tasks = new IndexedTaskHeap();
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final int port;
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    // Per-connection buffers: requests not yet complete, and replies not yet sent
+    private static final class Connection {
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+    }
+
+    /**
+     * Start a node listening on the loopback interface
+     * @param port The port to listen on, or 0 to pick a free one
+     */
+    public TaskPartitionNode(int port) throws IOException {
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        this.loop = new Thread(this::runLoop, "task-partition-node-" + this.port);
+        loop.start();
+    }
+
+    /** Return the port the node is listening on */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Stop serving and close every connection. Tasks still queued are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key);
+                        }
+                    } catch (IOException e) {
+                        // A broken or misbehaving client only loses its own connection
+                        key.cancel();
+                        closeQuietly(key.channel());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Partition node stopped: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (channel.read(connection.in) < 0) {
+            key.cancel();
+            channel.close();
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        int needed = 0;
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            TaskWireProtocol.checkLength(length);
+            if (in.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+            ByteBuffer frame = in.duplicate();
+            frame.position(in.position() + 4);
+            frame.limit(in.position() + 4 + length);
+            in.position(in.position() + 4 + length);
+            handle(connection, frame);
+        }
+        in.compact();
+        if (needed > in.capacity()) {
+            connection.in = TaskWireProtocol.ensure(in, needed - in.position());
+        }
+        flush(key);
+    }
+
+    private void handle(Connection connection, ByteBuffer frame) throws ProtocolException {
+        try {
+            byte op = frame.get();
+            ByteBuffer out = TaskWireProtocol.ensure(connection.out, 9);
+            int start;
+            switch (op) {
+                case TaskWireProtocol.OP_ENQUEUE: {
+                    int count = frame.getInt();
+                    for (int i = 0; i < count; i++) {
+                        tasks.add(TaskWireProtocol.getTask(frame));
+                    }
+                    start = TaskWireProtocol.beginFrame(out, TaskWireProtocol.STATUS_OK);
+                    out.putInt(count);
+                    break;
+                }
+                case TaskWireProtocol.OP_DEQUEUE: {
+                    int max = Math.max(0, Math.min(frame.getInt(), tasks.size()));
+                    start = TaskWireProtocol.beginFrame(out, TaskWireProtocol.STATUS_OK);
+                    out.putInt(0); // Count is filled in once we know how many fit
+                    // A task leaves the heap only once it is known to fit in the reply, so a
+                    // large request gets a short batch instead of an oversized frame that
+                    // would close the connection with the tasks already polled
+                    int count = 0;
+                    int length = out.position() - start - 4;
+                    while (count < max) {
+                        Task task = tasks.peek();
+                        byte[] name = TaskWireProtocol.encodeName(task);
+                        if (length + 8 + name.length > TaskWireProtocol.MAX_FRAME) {
+                            break;
+                        }
+                        tasks.poll();
+                        out = TaskWireProtocol.putTask(out, task.getPriority(), name);
+                        length += 8 + name.length;
+                        count++;
+                    }
+                    out.putInt(start + 5, count);
+                    break;
+                }
+                case TaskWireProtocol.OP_SIZE:
+                    start = TaskWireProtocol.beginFrame(out, TaskWireProtocol.STATUS_OK);
+                    out.putInt(tasks.size());
+                    break;
+                default:
+                    throw new ProtocolException("Unknown operation: " + op);
+            }
+            TaskWireProtocol.endFrame(out, start);
+            connection.out = out;
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Truncated request");
+        }
+    }
+
+    private void flush(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer out = connection.out;
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        out.compact();
+        // Only ask to be woken for writing while replies are still waiting
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing more can be done with a channel that fails to close
+        }
+    }
+
+    /**
+     * Run a node in its own process. Prints "LISTENING <port>" once it is ready
+     * and stops when standard input is closed, so it never outlives its parent.
+     * @param args An optional port number (default: any free port)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (TaskPartitionNode node = new TaskPartitionNode(port)) {
+            System.out.println("LISTENING " + node.getPort());
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // Wait for the parent to go away
+            }
+        }
+    }
+}
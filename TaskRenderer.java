@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * TaskRenderer writes tasks straight to an Appendable (a Writer, PrintStream or
+ * StringBuilder) one at a time, so displaying a large queue never builds the
+ * whole text or a copy of the queue in memory.
+ */
+public class TaskRenderer {
+    public static final String NO_TASKS = "[No tasks]";
+
+    /**
+     * Write every task, separated by spaces
+     * @param out The destination
+     * @param tasks The tasks in display order
+     * @return The number of tasks written
+     */
+    public static int render(Appendable out, Iterable<Task> tasks) throws IOException {
+        return render(out, tasks.iterator(), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Write one page of tasks, separated by spaces. Writes "[No tasks]" if the
+     * page is empty.
+     * @param out The destination
+     * @param tasks The tasks in display order
+     * @param offset The number of tasks to skip first
+     * @param limit The most tasks to write
+     * @return The number of tasks written
+     */
+    public static int render(Appendable out, Iterator<Task> tasks, int offset, int limit) throws IOException {
+        for (int skipped = 0; skipped < offset && tasks.hasNext(); skipped++) {
+            tasks.next();
+        }
+        int written = 0;
+        while (written < limit && tasks.hasNext()) {
+            if (written > 0) {
+                out.append(' ');
+            }
+            appendTask(out, tasks.next());
+            written++;
+        }
+        if (written == 0) {
+            out.append(NO_TASKS);
+        }
+        return written;
+    }
+
+    /**
+     * Write one task in the same form as Task.toString()
+     * @param out The destination
+     * @param task The task to write
+     */
+    public static void appendTask(Appendable out, Task task) throws IOException {
+        out.append("[Priority ").append(Integer.toString(task.getPriority())).append("] ").append(task.getName());
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * TaskScheduler holds delayed tasks in a TimingWheel and promotes them into a
+ * TaskStore once they are due. A single ticker thread advances the wheel and
+ * adds everything that expired on a tick to the store as one batch. If the
+ * store rejects the batch, its tasks are added one at a time so that one bad
+ * task does not hold back the others; each task that still fails is counted
+ * and handed to the failure callback.
+ */
+public class TaskScheduler implements AutoCloseable {
+    private final TimingWheel wheel;
+    private final long tickNanos;
+    private final long startNanos;
+    private final Consumer<List<Task>> promoter; // Null when promoting into store
+    private final TaskStore store;
+    private final BiConsumer<Task, RuntimeException> onFailure;
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile RuntimeException lastFailure;
+    private final Thread ticker;
+    private volatile boolean running = true;
+
+    /**
+     * Create a scheduler that promotes due tasks into a store
+     * @param store The store that receives due tasks
+     * @param tickMillis The wheel resolution in milliseconds
+     */
+    public TaskScheduler(TaskStore store, long tickMillis) {
+        this(null, store, tickMillis, null);
+    }
+
+    /**
+     * Create a scheduler that promotes due tasks into a store
+     * @param store The store that receives due tasks
+     * @param tickMillis The wheel resolution in milliseconds
+     * @param onFailure Called on the ticker thread with each task the store rejects
+     */
+    public TaskScheduler(TaskStore store, long tickMillis, BiConsumer<Task, RuntimeException> onFailure) {
+        this(null, store, tickMillis, onFailure);
+    }
+
+    /**
+     * Create a scheduler that hands each batch of due tasks to a callback
+     * @param promoter Called on the ticker thread with the tasks due on a tick
+     * @param tickMillis The wheel resolution in milliseconds
+     */
+    public TaskScheduler(Consumer<List<Task>> promoter, long tickMillis) {
+        this(promoter, null, tickMillis, null);
+    }
+
+    /**
+     * Create a scheduler that hands each batch of due tasks to a callback
+     * @param promoter Called on the ticker thread with the tasks due on a tick
+     * @param tickMillis The wheel resolution in milliseconds
+     * @param onFailure Called on the ticker thread with each task of a batch the promoter throws on
+     */
+    public TaskScheduler(Consumer<List<Task>> promoter, long tickMillis,
+                         BiConsumer<Task, RuntimeException> onFailure) {
+        this(promoter, null, tickMillis, onFailure);
+    }
+
+    private TaskScheduler(Consumer<List<Task>> promoter, TaskStore store, long tickMillis,
+                          BiConsumer<Task, RuntimeException> onFailure) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.promoter = promoter;
+        this.store = store;
+        this.onFailure = onFailure;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = System.nanoTime();
+        this.wheel = new TimingWheel(0);
+        this.ticker = new Thread(this::runTicker, "task-scheduler");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Promote a task after a delay
+     * @param task The task
+     * @param delay How long to wait
+     * @param unit The unit of the delay
+     * @return A handle that can cancel the promotion
+     */
+    public TimingWheel.Timer schedule(Task task, long delay, TimeUnit unit) {
+        long dueNanos = System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay));
+        // Round up so a task is never promoted early
+        return wheel.schedule(task, (dueNanos + tickNanos - 1) / tickNanos);
+    }
+
+    /**
+     * Promote a task at a wall-clock time
+     * @param task The task
+     * @param epochMillis The time in milliseconds since the epoch
+     * @return A handle that can cancel the promotion
+     */
+    public TimingWheel.Timer scheduleAt(Task task, long epochMillis) {
+        return schedule(task, epochMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Promote a task when its deadline arrives
+     * @param task A task with a deadline
+     * @return A handle that can cancel the promotion
+     * @throws IllegalArgumentException if the task has no deadline
+     */
+    public TimingWheel.Timer scheduleAtDeadline(Task task) {
+        if (!task.hasDeadline()) {
+            throw new IllegalArgumentException("Task has no deadline: " + task);
+        }
+        return scheduleAt(task, task.getDeadline());
+    }
+
+    /** Return the number of tasks waiting in the wheel */
+    public int pendingCount() {
+        return wheel.size();
+    }
+
+    /**
+     * Get the number of due tasks that could not be promoted
+     * @return The failed task count
+     */
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Get what the most recent failed promotion threw
+     * @return The exception, or null if no promotion has failed
+     */
+    public RuntimeException lastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stop the ticker thread. Tasks that are not yet due are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        ticker.interrupt();
+        try {
+            ticker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runTicker() {
+        List<Task> due = new ArrayList<>();
+        long nextTick = wheel.currentTick() + 1;
+        while (running) {
+            long waitNanos = startNanos + nextTick * tickNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+            }
+            // Catch up on every tick that passed, even if this thread was late
+            long tick = (System.nanoTime() - startNanos) / tickNanos;
+            if (wheel.advanceTo(tick, due) > 0) {
+                promote(due);
+                due = new ArrayList<>();
+            }
+            nextTick = tick + 1;
+        }
+    }
+
+    private void promote(List<Task> due) {
+        if (store == null) {
+            try {
+                promoter.accept(due);
+            } catch (RuntimeException e) {
+                // Keep ticking; a failing promotion must not stop other timers
+                for (Task task : due) {
+                    failed(task, e);
+                }
+            }
+            return;
+        }
+        try {
+            store.addAll(due);
+        } catch (IllegalArgumentException e) {
+            // addAll leaves the store unchanged when it rejects a task, so the
+            // valid tasks of the batch are added on their own
+            for (Task task : due) {
+                try {
+                    store.addTask(task);
+                } catch (RuntimeException taskFailure) {
+                    failed(task, taskFailure);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Task task : due) {
+                failed(task, e);
+            }
+        }
+    }
+
+    private void failed(Task task, RuntimeException e) {
+        lastFailure = e;
+        failedCount.incrementAndGet();
+        if (onFailure != null) {
+            try {
+                onFailure.accept(task, e);
+            } catch (RuntimeException handlerFailure) {
+                lastFailure = handlerFailure; // The ticker must outlive a broken handler
+            }
+        }
+    }
+
+    // Demonstration: delayed tasks and an earliest-deadline-first store
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== DELAYED TASK DEMONSTRATION ===");
+        TaskStore store = new TaskStore(Task.BY_DEADLINE);
+        long now = System.currentTimeMillis();
+
+        Task report = new Task("Write report", 2);
+        report.setDeadline(now + 300);
+        Task bug = new Task("Fix bug", 1);
+        bug.setDeadline(now + 200);
+        Task meeting = new Task("Attend meeting", 3);
+        meeting.setDeadline(now + 100);
+
+        try (TaskScheduler scheduler = new TaskScheduler(store, 10)) {
+            scheduler.schedule(report, 50, TimeUnit.MILLISECONDS);
+            scheduler.schedule(bug, 150, TimeUnit.MILLISECONDS);
+            scheduler.schedule(meeting, 50, TimeUnit.MILLISECONDS);
+            TimingWheel.Timer cancelled = scheduler.schedule(new Task("Update docs", 4), 100, TimeUnit.MILLISECONDS);
+            cancelled.cancel();
+            // Already in the store when it comes due, so only this task is rejected
+            scheduler.schedule(meeting, 150, TimeUnit.MILLISECONDS);
+
+            System.out.println("Tasks due now: " + store.size());
+            Thread.sleep(100);
+            System.out.println("After 100 ms: " + store.topN(10));
+            Thread.sleep(100);
+            System.out.println("After 200 ms (earliest deadline first): " + store.topN(10));
+            System.out.println("Failed promotions: " + scheduler.failedCount() + " (" + scheduler.lastFailure() + ")");
+        }
+
+        // Many pending timers cost one wheel slot entry each, not a thread each
+        final int timerCount = 1_000_000;
+        List<Task> fired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(0);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < timerCount; i++) {
+            wheel.schedule(new Task("timer-" + i, 3), 1 + (i * 7919L) % 100_000);
+        }
+        wheel.advanceTo(100_000, fired);
+        long elapsed = System.nanoTime() - startTime;
+        System.out.println("Fired " + fired.size() + " of " + timerCount + " timers in " + elapsed / 1_000_000 + " ms");
+    }
+}
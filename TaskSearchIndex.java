@@ -0,0 +1,731 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * TaskSearchIndex finds tasks by name without scanning every task. Names are
+ * matched case-insensitively.
+ *
+ * Prefix queries use a radix tree: each edge holds a run of characters, and each
+ * node remembers the best (lowest) priority anywhere below it, so the top k
+ * results are found best-first without visiting the whole subtree.
+ *
+ * Substring queries use an inverted index of the 3-character gram starting at
+ * every position of a name, padded with '\0' past its end, so even the last
+ * characters start a gram. Each posting list is split into buckets by priority,
+ * and the buckets are read best first, so a search stops as soon as it has k
+ * matches. A query of three or more characters reads the shortest list among
+ * its grams and checks each candidate's name. A shorter query is the start of a
+ * gram, so it reads every list whose gram starts with it; the lists are grouped
+ * by their first one and two characters for this.
+ *
+ * A task gets a new id whenever its priority changes, so its old entries, which
+ * sit in the wrong buckets, simply go stale. Stale entries are skipped, and the
+ * posting lists and the id table are rebuilt once more than half of their
+ * entries are stale.
+ *
+ * The index holds tasks by identity and must be told about every add, remove,
+ * rename and priority change. TaskStore does this for the tasks it holds. Each
+ * task records its id, the way IndexedTaskHeap tasks record their position, so
+ * a task can be in only one index at a time.
+ */
+public class TaskSearchIndex {
+    // Length of an indexed gram
+    private static final int GRAM = 3;
+
+    private final RadixNode root = new RadixNode("");
+
+    // Substring index: each task gets an id, and each gram maps to the ids containing it.
+    // Grams map to a slot in postings rather than to the list itself, so neither the
+    // gram keys nor the ids are boxed
+    private int size = 0;
+    private Task[] tasksById = new Task[16];
+    private String[] namesById = new String[16];
+    private int[] entriesById = new int[16]; // Posting entries plus one for the id slot
+    private int nextId = 0;
+    private LongLongHashMap postingSlots = new LongLongHashMap();
+    private Posting[] postings = new Posting[16];
+    private int postingCount = 0;
+    // The posting slots of the grams starting with each one- or two-character key
+    private LongLongHashMap groupSlots = new LongLongHashMap();
+    private int[][] groups = new int[16][];
+    private int[] groupSizes = new int[16];
+    private int groupCount = 0;
+    private long liveEntries = 0;
+    private long deadEntries = 0;
+    private PostingCursor cursor = new PostingCursor();
+    private boolean suspended = false;
+
+    /**
+     * Add a task to the index
+     * @param task The task to add
+     */
+    public void add(Task task) {
+        if (suspended) {
+            return;
+        }
+        String name = normalize(task.getName());
+        insertPrefix(name, task);
+        addGrams(task, name);
+    }
+
+    /**
+     * Remove a task from the index
+     * @param task The task to remove
+     * @return True if the task was in the index
+     */
+    public boolean remove(Task task) {
+        int id = idOf(task);
+        if (id < 0) {
+            return false;
+        }
+        removePrefix(namesById[id], task);
+        retire(task, id);
+        return true;
+    }
+
+    /**
+     * Update the index after a task was renamed
+     * @param task The task, already carrying its new name
+     */
+    public void renamed(Task task) {
+        if (remove(task)) {
+            add(task);
+        }
+    }
+
+    /**
+     * Update the index after a task's priority changed
+     * @param task The task, already carrying its new priority
+     */
+    public void priorityChanged(Task task) {
+        int id = idOf(task);
+        if (id >= 0) {
+            String name = namesById[id];
+            removePrefix(name, task);
+            insertPrefix(name, task);
+            // Its posting entries are in the old priority's buckets
+            retire(task, id);
+            addGrams(task, name);
+        }
+    }
+
+    /**
+     * Add many tasks to the index, growing its tables once for all of them
+     * @param tasks The tasks to add
+     */
+    public void addAll(Collection<Task> tasks) {
+        if (suspended) {
+            return;
+        }
+        int capacity = nextId + tasks.size();
+        if (capacity > tasksById.length) {
+            tasksById = Arrays.copyOf(tasksById, capacity);
+            namesById = Arrays.copyOf(namesById, capacity);
+            entriesById = Arrays.copyOf(entriesById, capacity);
+        }
+        for (Task task : tasks) {
+            add(task);
+        }
+    }
+
+    /**
+     * Replace the contents of the index with the given tasks, and resume
+     * indexing if it was suspended
+     * @param tasks The tasks to index
+     */
+    public void rebuild(Collection<Task> tasks) {
+        clear();
+        suspended = false;
+        addAll(tasks);
+    }
+
+    /**
+     * Stop indexing until the next rebuild, so a long run of changes (such as
+     * recovery replaying a log) can be indexed once at the end
+     */
+    public void suspend() {
+        clear();
+        suspended = true;
+    }
+
+    /**
+     * Remove every task from the index
+     */
+    public void clear() {
+        root.children = new RadixNode[0];
+        root.childCount = 0;
+        root.tasks = null;
+        root.taskCount = 0;
+        root.minPriority = Integer.MAX_VALUE;
+        for (int id = 0; id < nextId; id++) {
+            if (tasksById[id] != null) {
+                tasksById[id].searchId = -1;
+            }
+        }
+        size = 0;
+        tasksById = new Task[16];
+        namesById = new String[16];
+        entriesById = new int[16];
+        nextId = 0;
+        clearPostings();
+        liveEntries = 0;
+        deadEntries = 0;
+    }
+
+    /** Return the number of indexed tasks */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the highest priority tasks whose name starts with a prefix
+     * @param prefix The start of the name, in any case
+     * @param k The most results to return
+     * @return Up to k tasks, highest priority first
+     */
+    public List<Task> searchPrefix(String prefix, int k) {
+        String key = normalize(prefix);
+        RadixNode node = root;
+        int i = 0;
+        while (i < key.length()) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            int m = Math.min(node.label.length(), key.length() - i);
+            if (!node.label.regionMatches(0, key, i, m)) {
+                return Collections.emptyList();
+            }
+            i += m;
+        }
+
+        // Best-first walk: the frontier holds subtrees (ranked by their best
+        // priority) and single tasks, so the first k tasks popped are the answer
+        List<Task> results = new ArrayList<>(Math.min(k, 64));
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingInt(c -> c.priority));
+        frontier.add(new Candidate(node.minPriority, node, null));
+        while (!frontier.isEmpty() && results.size() < k) {
+            Candidate next = frontier.poll();
+            if (next.task != null) {
+                results.add(next.task);
+                continue;
+            }
+            RadixNode current = next.node;
+            for (int t = 0; t < current.taskCount; t++) {
+                frontier.add(new Candidate(current.tasks[t].getPriority(), null, current.tasks[t]));
+            }
+            for (int c = 0; c < current.childCount; c++) {
+                frontier.add(new Candidate(current.children[c].minPriority, current.children[c], null));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find the highest priority tasks whose name contains some text
+     * @param text The text to look for, in any case
+     * @param k The most results to return
+     * @return Up to k tasks, highest priority first
+     */
+    public List<Task> searchSubstring(String text, int k) {
+        String query = normalize(text);
+        if (query.isEmpty()) {
+            return searchPrefix("", k); // Every name contains the empty string
+        }
+
+        if (query.length() < GRAM) {
+            return searchGroup(query, k);
+        }
+
+        // A match contains every gram of the query, so the shortest list is enough
+        Posting shortest = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            Posting posting = postingFor(query, i, false);
+            if (posting == null) {
+                return Collections.emptyList(); // Some gram never occurs
+            }
+            if (shortest == null || posting.size < shortest.size) {
+                shortest = posting;
+            }
+        }
+
+        // Buckets come best priority first, so the first k matches are the answer
+        List<Task> results = new ArrayList<>(Math.min(k, 64));
+        for (int b = 0; b < shortest.bucketCount && results.size() < k; b++) {
+            int[] bucket = shortest.ids[b];
+            int size = shortest.sizes[b];
+            for (int i = 0; i < size && results.size() < k; i++) {
+                int id = bucket[i];
+                if (tasksById[id] != null && namesById[id].contains(query)) {
+                    results.add(tasksById[id]);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find the best k tasks for a query shorter than a gram, by merging the
+     * buckets of every posting whose gram starts with it, best priority first
+     */
+    private List<Task> searchGroup(String query, int k) {
+        int slot = (int) groupSlots.getOrDefault(groupOf(query, 0, query.length()), -1);
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        int[] group = groups[slot];
+        int count = groupSizes[slot];
+        int[] next = new int[count]; // The next bucket to read in each posting
+        List<Task> results = new ArrayList<>(Math.min(k, 64));
+        // A task's live entries all sit in buckets of its current priority, so
+        // duplicates (the query at several places in one name) meet in one round
+        IntIntHashMap seen = new IntIntHashMap();
+        while (results.size() < k) {
+            int priority = Integer.MAX_VALUE;
+            for (int g = 0; g < count; g++) {
+                Posting posting = postings[group[g]];
+                if (next[g] < posting.bucketCount) {
+                    priority = Math.min(priority, posting.priorities[next[g]]);
+                }
+            }
+            if (priority == Integer.MAX_VALUE) {
+                break; // Every posting is used up
+            }
+            seen.clear();
+            for (int g = 0; g < count && results.size() < k; g++) {
+                Posting posting = postings[group[g]];
+                int b = next[g];
+                if (b == posting.bucketCount || posting.priorities[b] != priority) {
+                    continue;
+                }
+                next[g]++;
+                int[] bucket = posting.ids[b];
+                int size = posting.sizes[b];
+                for (int i = 0; i < size && results.size() < k; i++) {
+                    int id = bucket[i];
+                    // The name check only matters for names holding '\0' itself
+                    if (tasksById[id] != null && !seen.containsKey(id) && namesById[id].contains(query)) {
+                        seen.put(id, 1);
+                        results.add(tasksById[id]);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /** Return the id of a task in this index, or -1 */
+    private int idOf(Task task) {
+        int id = task.searchId;
+        return id >= 0 && id < nextId && tasksById[id] == task ? id : -1;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private void insertPrefix(String key, Task task) {
+        int priority = task.getPriority();
+        RadixNode node = root;
+        node.minPriority = Math.min(node.minPriority, priority);
+        int i = 0;
+        while (i < key.length()) {
+            RadixNode child = node.child(key.charAt(i));
+            if (child == null) {
+                child = new RadixNode(key.substring(i));
+                node.addChild(child);
+                i = key.length();
+            } else {
+                int common = commonPrefix(child.label, key, i);
+                if (common < child.label.length()) {
+                    // Split the edge so the shared part becomes its own node
+                    RadixNode middle = new RadixNode(child.label.substring(0, common));
+                    node.replaceChild(middle);
+                    child.label = child.label.substring(common);
+                    middle.addChild(child);
+                    child = middle;
+                }
+                i += common;
+            }
+            node = child;
+            node.minPriority = Math.min(node.minPriority, priority);
+        }
+        node.addTask(task);
+    }
+
+    private void removePrefix(String key, Task task) {
+        List<RadixNode> path = new ArrayList<>();
+        RadixNode node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            node = node.child(key.charAt(i));
+            if (node == null || !key.startsWith(node.label, i)) {
+                return;
+            }
+            i += node.label.length();
+            path.add(node);
+        }
+        if (!node.removeTask(task)) {
+            return;
+        }
+
+        int last = path.size() - 1;
+        if (last > 0 && node.taskCount == 0) {
+            RadixNode parent = path.get(last - 1);
+            if (node.childCount == 0) {
+                parent.removeChild(node);
+                if (last > 1 && parent.taskCount == 0 && parent.childCount == 1) {
+                    mergeWithOnlyChild(path.get(last - 2), parent);
+                }
+            } else if (node.childCount == 1) {
+                mergeWithOnlyChild(parent, node);
+            }
+        }
+        for (int p = last; p >= 0; p--) {
+            path.get(p).recomputeMin();
+        }
+    }
+
+    private static void mergeWithOnlyChild(RadixNode parent, RadixNode node) {
+        RadixNode child = node.children[0];
+        child.label = node.label + child.label;
+        parent.replaceChild(child);
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int n = 0;
+        while (n < max && label.charAt(n) == key.charAt(offset + n)) {
+            n++;
+        }
+        return n;
+    }
+
+    private void addGrams(Task task, String name) {
+        int id = nextId++;
+        if (id == tasksById.length) {
+            tasksById = Arrays.copyOf(tasksById, id * 2);
+            namesById = Arrays.copyOf(namesById, id * 2);
+            entriesById = Arrays.copyOf(entriesById, id * 2);
+        }
+        tasksById[id] = task;
+        namesById[id] = name;
+        task.searchId = id;
+        size++;
+        int priority = task.getPriority();
+        int entries = 1; // The id slot
+        cursor.load(name);
+        for (int i = 0; i < name.length(); i++) {
+            if (cursor.postings[i].add(id, priority)) {
+                entries++;
+            }
+        }
+        entriesById[id] = entries;
+        liveEntries += entries;
+    }
+
+    /** Mark a task's id slot and posting entries stale */
+    private void retire(Task task, int id) {
+        task.searchId = -1;
+        size--;
+        tasksById[id] = null;
+        namesById[id] = null;
+        liveEntries -= entriesById[id];
+        deadEntries += entriesById[id];
+        if (deadEntries > liveEntries && deadEntries > 1024) {
+            compact();
+        }
+    }
+
+    /** Rebuild the posting lists without the entries of removed tasks */
+    private void compact() {
+        Task[] oldTasks = tasksById;
+        String[] oldNames = namesById;
+        int oldCount = nextId;
+        tasksById = new Task[Math.max(16, size * 2)];
+        size = 0;
+        namesById = new String[tasksById.length];
+        entriesById = new int[tasksById.length];
+        nextId = 0;
+        clearPostings();
+        liveEntries = 0;
+        deadEntries = 0;
+        for (int id = 0; id < oldCount; id++) {
+            if (oldTasks[id] != null) {
+                addGrams(oldTasks[id], oldNames[id]);
+            }
+        }
+    }
+
+    /**
+     * Return the posting list of the gram at start, or null if it has none and
+     * create is false. A new list joins the groups of its first characters.
+     */
+    private Posting postingFor(String name, int start, boolean create) {
+        long gram = gramOf(name, start);
+        int slot = (int) postingSlots.getOrDefault(gram, -1);
+        if (slot >= 0) {
+            return postings[slot];
+        }
+        if (!create) {
+            return null;
+        }
+        if (postingCount == postings.length) {
+            postings = Arrays.copyOf(postings, postingCount * 2);
+        }
+        Posting posting = new Posting();
+        postings[postingCount] = posting;
+        postingSlots.put(gram, postingCount);
+        addToGroup(groupOf(name, start, 1), postingCount);
+        addToGroup(groupOf(name, start, 2), postingCount);
+        postingCount++;
+        return posting;
+    }
+
+    private void addToGroup(long key, int postingSlot) {
+        int slot = (int) groupSlots.getOrDefault(key, -1);
+        if (slot < 0) {
+            if (groupCount == groups.length) {
+                groups = Arrays.copyOf(groups, groupCount * 2);
+                groupSizes = Arrays.copyOf(groupSizes, groupCount * 2);
+            }
+            slot = groupCount++;
+            groups[slot] = new int[4];
+            groupSizes[slot] = 0;
+            groupSlots.put(key, slot);
+        }
+        if (groupSizes[slot] == groups[slot].length) {
+            groups[slot] = Arrays.copyOf(groups[slot], groupSizes[slot] * 2);
+        }
+        groups[slot][groupSizes[slot]++] = postingSlot;
+    }
+
+    private void clearPostings() {
+        postingSlots = new LongLongHashMap();
+        postings = new Posting[16];
+        postingCount = 0;
+        groupSlots = new LongLongHashMap();
+        groups = new int[16][];
+        groupSizes = new int[16];
+        groupCount = 0;
+        cursor = new PostingCursor();
+    }
+
+    /** Return the key of the gram at start, padded with '\0' past the end of the name */
+    private static long gramOf(String name, int start) {
+        long packed = GRAM;
+        for (int i = start; i < start + GRAM; i++) {
+            packed = (packed << 16) | (i < name.length() ? name.charAt(i) : 0);
+        }
+        // Scramble the bits (reversibly) so the grams spread well over the hash table
+        return packed * 0x9E3779B97F4A7C15L;
+    }
+
+    /** Return the key of the group of grams starting with the given characters, padded like a gram */
+    private static long groupOf(String name, int start, int length) {
+        // The length goes under the characters, so "a" and "\0a" differ
+        long packed = length;
+        for (int i = start; i < start + length; i++) {
+            packed = (packed << 16) | (i < name.length() ? name.charAt(i) : 0);
+        }
+        return packed * 0x9E3779B97F4A7C15L;
+    }
+
+    /** A subtree or a single task waiting in the best-first prefix search */
+    private static class Candidate {
+        final int priority;
+        final RadixNode node;
+        final Task task;
+
+        Candidate(int priority, RadixNode node, Task task) {
+            this.priority = priority;
+            this.node = node;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Finds the posting of every gram of a name. Names often share a long prefix
+     * with the one before (such as "task 1041" and "task 1042"), and the grams
+     * inside the shared prefix keep the postings found last time.
+     */
+    private final class PostingCursor {
+        // postings[start] is the posting of the gram at start
+        Posting[] postings = new Posting[16];
+        private String previous = "";
+
+        void load(String name) {
+            if (postings.length < name.length()) {
+                postings = Arrays.copyOf(postings, Math.max(name.length(), postings.length * 2));
+            }
+            int common = commonPrefix(previous, name, 0);
+            for (int i = Math.max(0, common - GRAM + 1); i < name.length(); i++) {
+                postings[i] = postingFor(name, i, true);
+            }
+            previous = name;
+        }
+    }
+
+    /** The task ids for one gram, in one growable bucket per priority, best first */
+    private static class Posting {
+        int[] priorities = new int[1];
+        int[][] ids = new int[1][];
+        int[] sizes = new int[1];
+        int bucketCount = 0;
+        int size = 0;
+        // Tasks often arrive in runs of one priority, so the last bucket is tried first
+        private int lastBucket = 0;
+
+        /** Add an id, unless it is already the last one (a gram repeated in one name) */
+        boolean add(int id, int priority) {
+            int b = bucketFor(priority);
+            int n = sizes[b];
+            if (n > 0 && ids[b][n - 1] == id) {
+                return false;
+            }
+            if (n == ids[b].length) {
+                ids[b] = Arrays.copyOf(ids[b], n * 2);
+            }
+            ids[b][n] = id;
+            sizes[b] = n + 1;
+            size++;
+            return true;
+        }
+
+        /** Search the few buckets of a typical posting in order, like binarySearch */
+        private int linearSearch(int priority) {
+            int b = 0;
+            while (b < bucketCount && priorities[b] < priority) {
+                b++;
+            }
+            return b < bucketCount && priorities[b] == priority ? b : -b - 1;
+        }
+
+        private int bucketFor(int priority) {
+            if (lastBucket < bucketCount && priorities[lastBucket] == priority) {
+                return lastBucket;
+            }
+            int b = bucketCount <= 8 ? linearSearch(priority)
+                    : Arrays.binarySearch(priorities, 0, bucketCount, priority);
+            if (b >= 0) {
+                lastBucket = b;
+                return b;
+            }
+            b = -b - 1;
+            if (bucketCount == priorities.length) {
+                priorities = Arrays.copyOf(priorities, bucketCount * 2);
+                ids = Arrays.copyOf(ids, bucketCount * 2);
+                sizes = Arrays.copyOf(sizes, bucketCount * 2);
+            }
+            System.arraycopy(priorities, b, priorities, b + 1, bucketCount - b);
+            System.arraycopy(ids, b, ids, b + 1, bucketCount - b);
+            System.arraycopy(sizes, b, sizes, b + 1, bucketCount - b);
+            priorities[b] = priority;
+            ids[b] = new int[2];
+            sizes[b] = 0;
+            bucketCount++;
+            lastBucket = b;
+            return b;
+        }
+    }
+
+    /** Radix tree node; children are kept sorted by the first character of their label */
+    private static class RadixNode {
+        String label;
+        RadixNode[] children = new RadixNode[0];
+        int childCount = 0;
+        Task[] tasks;          // Tasks whose whole name ends at this node
+        int taskCount = 0;
+        int minPriority = Integer.MAX_VALUE;
+
+        RadixNode(String label) {
+            this.label = label;
+        }
+
+        RadixNode child(char first) {
+            int index = find(first);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void addChild(RadixNode child) {
+            int index = -find(child.label.charAt(0)) - 1;
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+            children[index] = child;
+            childCount++;
+            minPriority = Math.min(minPriority, child.minPriority);
+        }
+
+        /** Replace the child that starts with the same character */
+        void replaceChild(RadixNode child) {
+            children[find(child.label.charAt(0))] = child;
+        }
+
+        void removeChild(RadixNode child) {
+            int index = find(child.label.charAt(0));
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            children[--childCount] = null;
+        }
+
+        void addTask(Task task) {
+            if (tasks == null) {
+                tasks = new Task[1];
+            } else if (taskCount == tasks.length) {
+                tasks = Arrays.copyOf(tasks, taskCount * 2);
+            }
+            tasks[taskCount++] = task;
+            minPriority = Math.min(minPriority, task.getPriority());
+        }
+
+        boolean removeTask(Task task) {
+            for (int i = 0; i < taskCount; i++) {
+                if (tasks[i] == task) {
+                    tasks[i] = tasks[--taskCount];
+                    tasks[taskCount] = null;
+                    if (taskCount == 0) {
+                        tasks = null;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void recomputeMin() {
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < taskCount; i++) {
+                min = Math.min(min, tasks[i].getPriority());
+            }
+            for (int i = 0; i < childCount; i++) {
+                min = Math.min(min, children[i].minPriority);
+            }
+            minPriority = min;
+        }
+
+        private int find(char first) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char c = children[mid].label.charAt(0);
+                if (c < first) {
+                    low = mid + 1;
+                } else if (c > first) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
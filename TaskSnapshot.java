@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * TaskSnapshot writes and reads a compact copy of every task in a TaskStore.
+ * A snapshot records the write-ahead log generation it covers, so recovery only
+ * has to replay log records written after the snapshot was taken.
+ *
+ * File layout: [int magic][long generation][int task count]
+ * then per task [int priority][int name length][name bytes],
+ * and finally an int CRC32 of everything before it.
+ */
+public class TaskSnapshot {
+    private static final int MAGIC = 0x5441534B; // "TASK"
+    private static final int HEADER_SIZE = 16;
+
+    private final long generation;
+    private final List<Task> tasks;
+
+    private TaskSnapshot(long generation, List<Task> tasks) {
+        this.generation = generation;
+        this.tasks = tasks;
+    }
+
+    /**
+     * Get the log generation covered by this snapshot
+     * @return The generation number
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the tasks in insertion order
+     * @return The list of tasks
+     */
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Write a snapshot. The file is written to a temporary name, forced to disk
+     * and then renamed, so a crash never leaves a half-written snapshot behind.
+     * @param file The snapshot file
+     * @param generation The log generation the snapshot covers
+     * @param tasks The tasks in insertion order
+     */
+    public static void write(Path file, long generation, List<Task> tasks) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putLong(generation).putInt(tasks.size());
+            for (Task task : tasks) {
+                byte[] name = task.getName().getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 8 + name.length) {
+                    flush(channel, buffer, crc);
+                    if (buffer.capacity() < 8 + name.length) {
+                        buffer = ByteBuffer.allocate(8 + name.length);
+                    }
+                }
+                buffer.putInt(task.getPriority()).putInt(name.length).put(name);
+            }
+            flush(channel, buffer, crc);
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot by memory-mapping the file
+     * @param file The snapshot file
+     * @return The snapshot, or null if the file does not exist
+     * @throws IOException if the file cannot be read or fails its checksum
+     */
+    public static TaskSnapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            ByteBuffer body = map.duplicate();
+            body.limit((int) size - 4);
+            crc.update(body);
+            if ((int) crc.getValue() != map.getInt((int) size - 4)) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            if (map.getInt() != MAGIC) {
+                throw new IOException("Not a task snapshot: " + file);
+            }
+            long generation = map.getLong();
+            int count = map.getInt();
+            List<Task> tasks = new ArrayList<>(count);
+            byte[] name = new byte[64];
+            for (int i = 0; i < count; i++) {
+                int priority = map.getInt();
+                int length = map.getInt();
+                if (name.length < length) {
+                    name = new byte[length];
+                }
+                map.get(name, 0, length);
+                tasks.add(new Task(new String(name, 0, length, StandardCharsets.UTF_8), priority));
+            }
+            return new TaskSnapshot(generation, tasks);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.array(), 0, buffer.limit());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,794 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * TaskStore keeps every task in several views at once: insertion order (ArrayList,
+ * which read from the end is also the LIFO stack view), first in first out (Queue)
+ * and priority order (IndexedTaskHeap). Every change goes through the store so the
+ * views stay in step. Tasks should not be modified with their own setters while
+ * they are stored, since that bypasses the priority view and the history.
+ *
+ * Adds, removes, priority changes and renames are recorded in a bounded
+ * UndoHistory, so any number of recent changes can be undone and redone.
+ * A TaskSearchIndex kept alongside the views answers name searches.
+ *
+ * A store opened on a directory is durable: each change is written to a
+ * write-ahead log before the call returns, and checkpoint() writes a snapshot
+ * so recovery does not have to replay the whole history. The undo history
+ * itself is not saved and starts empty after a restart.
+ *
+ * enableMetrics() turns on telemetry (queue depth per priority, wait times and
+ * operation counts), which can also be published over JMX.
+ */
+public class TaskStore implements Closeable {
+    public static final int DEFAULT_HISTORY_CAPACITY = 1000;
+
+    private static final String LOG_FILE = "tasks.wal";
+    private static final String SNAPSHOT_FILE = "tasks.snapshot";
+
+    private final ArrayList<Task> allTasks = new ArrayList<>();
+    private final LinkedList<Task> taskQueue = new LinkedList<>();
+    private final IndexedTaskHeap priorityTasks;
+    private final UndoHistory history;
+    private final TaskSearchIndex searchIndex = new TaskSearchIndex();
+
+    // Tasks whose removal is waiting to be applied as one batch during undo/redo
+    private final Set<Task> pendingRemovals = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Path directory;
+    private TaskWriteAheadLog log;
+    private TaskStoreMetrics metrics;
+
+    /**
+     * Create an in-memory store that is lost when the program exits
+     */
+    public TaskStore() {
+        this(DEFAULT_HISTORY_CAPACITY);
+    }
+
+    /**
+     * Create an in-memory store with a custom undo history size
+     * @param historyCapacity The most changes that can be undone
+     */
+    public TaskStore(int historyCapacity) {
+        this(null, historyCapacity, Comparator.naturalOrder());
+    }
+
+    /**
+     * Create an in-memory store whose priority view uses a custom ordering,
+     * such as Task.BY_DEADLINE for earliest-deadline-first
+     * @param order The ordering of the priority view, first task first
+     */
+    public TaskStore(Comparator<? super Task> order) {
+        this(null, DEFAULT_HISTORY_CAPACITY, order);
+    }
+
+    private TaskStore(Path directory, int historyCapacity, Comparator<? super Task> order) {
+        this.directory = directory;
+        this.history = new UndoHistory(historyCapacity);
+        this.priorityTasks = new IndexedTaskHeap(order);
+    }
+
+    /**
+     * Open a durable store, recovering any tasks saved in the directory
+     * @param directory The directory holding the snapshot and log files
+     * @return The recovered store
+     */
+    public static TaskStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        TaskStore store = new TaskStore(directory, DEFAULT_HISTORY_CAPACITY, Comparator.naturalOrder());
+        // Replay changes tasks one at a time; the recovered tasks are indexed once at the end
+        store.searchIndex.suspend();
+
+        long generation = 0;
+        TaskSnapshot snapshot = TaskSnapshot.read(directory.resolve(SNAPSHOT_FILE));
+        if (snapshot != null) {
+            generation = snapshot.getGeneration();
+            store.load(snapshot.getTasks());
+        }
+
+        TaskWriteAheadLog log = new TaskWriteAheadLog(directory.resolve(LOG_FILE), generation + 1);
+        if (log.getGeneration() > generation) {
+            log.replay(store::replayRecord);
+        } else {
+            // The snapshot already contains everything in this log
+            log.reset(generation + 1);
+        }
+        store.searchIndex.rebuild(store.allTasks);
+        store.log = log;
+        return store;
+    }
+
+    /**
+     * Add a task to all views
+     * @param task The task to add
+     * @throws IllegalArgumentException if the task is already stored
+     */
+    public void addTask(Task task) {
+        long sequence;
+        synchronized (this) {
+            int index = allTasks.size();
+            insertAt(index, task);
+            history.recordAdd(task, index);
+            sequence = logChange(TaskWriteAheadLog.OP_ADD, task, 0);
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Add many tasks to all views in one pass. The priority view is rebuilt with
+     * an O(n) heapify when that is cheaper than inserting the tasks one at a time,
+     * and a durable store waits for a single log sync at the end.
+     * @param tasks The tasks to add, in order
+     * @throws IllegalArgumentException if a task is already stored or appears twice;
+     *         the store is unchanged
+     */
+    public void addAll(Collection<Task> tasks) {
+        long sequence = 0;
+        synchronized (this) {
+            int index = allTasks.size();
+            number(tasks, index);
+            allTasks.addAll(tasks);
+            taskQueue.addAll(tasks);
+            searchIndex.addAll(tasks);
+            boolean rebuild = tasks.size() * log2(allTasks.size()) > allTasks.size();
+            if (rebuild) {
+                priorityTasks.rebuild(allTasks);
+            } else {
+                for (Task task : tasks) {
+                    priorityTasks.add(task);
+                }
+            }
+            if (metrics != null) {
+                for (Task task : tasks) {
+                    metrics.added(task);
+                }
+                countHeapWork(rebuild, tasks.size());
+            }
+            for (Task task : tasks) {
+                history.recordAdd(task, index++);
+                sequence = logChange(TaskWriteAheadLog.OP_ADD, task, 0);
+            }
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Remove a task from all views
+     * @param task The task to remove
+     * @return True if the task was found and removed
+     */
+    public boolean removeTask(Task task) {
+        long sequence;
+        synchronized (this) {
+            int index = allTasks.indexOf(task);
+            if (index < 0) {
+                return false;
+            }
+            Task stored = removeAt(index);
+            history.recordRemove(stored, index);
+            sequence = logChange(TaskWriteAheadLog.OP_REMOVE, stored, index);
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Change the priority of a stored task and reposition it in the priority view.
+     * Passing the stored task itself takes O(log n); an equal copy is found by a
+     * linear search first.
+     * @param task The task to change
+     * @param newPriority The new priority
+     * @return True if the task was found and changed
+     */
+    public boolean changePriority(Task task, int newPriority) {
+        long sequence;
+        synchronized (this) {
+            Task stored = find(task);
+            if (stored == null) {
+                return false;
+            }
+            int oldPriority = stored.getPriority();
+            sequence = logPriority(stored, newPriority);
+            applyPriority(stored, newPriority);
+            history.recordReprioritize(stored, oldPriority, newPriority);
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Change the priorities of many stored tasks at once. When enough tasks change,
+     * the priority view is rebuilt once in O(n) instead of moving each task.
+     * Each change is still recorded separately for undo.
+     *
+     * Every key is matched to a stored task before any priority changes, so one
+     * change cannot redirect the lookup of another. Keys that are stored tasks
+     * themselves have their priority changed, and since a task's hash code
+     * includes its priority, the map should not be used for lookups afterwards.
+     * @param newPriorities The new priority for each task
+     * @return The number of tasks that were found and changed
+     */
+    public int rerank(Map<Task, Integer> newPriorities) {
+        long sequence = 0;
+        int changed = 0;
+        synchronized (this) {
+            Task[] targets = new Task[newPriorities.size()];
+            int[] priorities = new int[targets.length];
+            int count = 0;
+            for (Map.Entry<Task, Integer> entry : newPriorities.entrySet()) {
+                Task stored = find(entry.getKey());
+                if (stored != null) {
+                    targets[count] = stored;
+                    priorities[count++] = entry.getValue();
+                }
+            }
+            boolean rebuild = count * log2(priorityTasks.size()) > priorityTasks.size();
+            for (int i = 0; i < count; i++) {
+                Task stored = targets[i];
+                int oldPriority = stored.getPriority();
+                int newPriority = priorities[i];
+                sequence = logPriority(stored, newPriority);
+                if (rebuild) {
+                    stored.setPriority(newPriority);
+                    searchIndex.priorityChanged(stored);
+                    if (metrics != null) {
+                        metrics.priorityChanged(oldPriority, newPriority);
+                    }
+                } else {
+                    applyPriority(stored, newPriority);
+                }
+                history.recordReprioritize(stored, oldPriority, newPriority);
+                changed++;
+            }
+            if (rebuild) {
+                priorityTasks.heapify();
+                if (metrics != null) {
+                    metrics.heapRebuilt();
+                }
+            }
+        }
+        awaitDurable(sequence);
+        return changed;
+    }
+
+    /**
+     * Rename a stored task
+     * @param task The task to change
+     * @param newName The new name
+     * @return True if the task was found and renamed
+     */
+    public boolean renameTask(Task task, String newName) {
+        long sequence;
+        synchronized (this) {
+            Task stored = find(task);
+            if (stored == null) {
+                return false;
+            }
+            String oldName = stored.getName();
+            sequence = logRename(stored, newName);
+            applyName(stored, newName);
+            history.recordRename(stored, oldName, newName);
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Undo the most recent change
+     * @return The task the undone change affected, or null if there is nothing to undo
+     */
+    public Task undo() {
+        long sequence;
+        Task affected;
+        synchronized (this) {
+            int slot = history.stepBack();
+            if (slot < 0) {
+                return null;
+            }
+            affected = history.taskAt(slot);
+            sequence = reverse(slot);
+            flushRemovals();
+            if (metrics != null) {
+                metrics.undone();
+            }
+        }
+        awaitDurable(sequence);
+        return affected;
+    }
+
+    /**
+     * Undo several changes as one batch. Removals are applied to every view
+     * together at the end rather than one at a time.
+     * @param steps The most changes to undo
+     * @return The number of changes undone
+     */
+    public int undo(int steps) {
+        long sequence = 0;
+        int done = 0;
+        synchronized (this) {
+            while (done < steps) {
+                int slot = history.stepBack();
+                if (slot < 0) {
+                    break;
+                }
+                sequence = Math.max(sequence, reverse(slot));
+                done++;
+                if (metrics != null) {
+                    metrics.undone();
+                }
+            }
+            flushRemovals();
+        }
+        awaitDurable(sequence);
+        return done;
+    }
+
+    /**
+     * Redo the most recently undone change
+     * @return The task the redone change affected, or null if there is nothing to redo
+     */
+    public Task redo() {
+        long sequence;
+        Task affected;
+        synchronized (this) {
+            int slot = history.stepForward();
+            if (slot < 0) {
+                return null;
+            }
+            affected = history.taskAt(slot);
+            sequence = reapply(slot);
+            flushRemovals();
+            if (metrics != null) {
+                metrics.redone();
+            }
+        }
+        awaitDurable(sequence);
+        return affected;
+    }
+
+    /**
+     * Redo several undone changes as one batch
+     * @param steps The most changes to redo
+     * @return The number of changes redone
+     */
+    public int redo(int steps) {
+        long sequence = 0;
+        int done = 0;
+        synchronized (this) {
+            while (done < steps) {
+                int slot = history.stepForward();
+                if (slot < 0) {
+                    break;
+                }
+                sequence = Math.max(sequence, reapply(slot));
+                done++;
+                if (metrics != null) {
+                    metrics.redone();
+                }
+            }
+            flushRemovals();
+        }
+        awaitDurable(sequence);
+        return done;
+    }
+
+    /** Return the number of changes that can be undone */
+    public synchronized int undoSize() {
+        return history.undoSize();
+    }
+
+    /** Return the number of changes that can be redone */
+    public synchronized int redoSize() {
+        return history.redoSize();
+    }
+
+    /**
+     * Write a snapshot of the store and clear the log it replaces
+     * @throws IllegalStateException if the store is in-memory only
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (log == null) {
+            throw new IllegalStateException("In-memory store has nothing to checkpoint");
+        }
+        long generation = log.getGeneration();
+        log.sync();
+        TaskSnapshot.write(directory.resolve(SNAPSHOT_FILE), generation, allTasks);
+        log.reset(generation + 1);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Start collecting telemetry. Tasks already in the store are counted in the
+     * queue depths, but only tasks added from now on have their wait times measured.
+     * @return The metrics, which stay valid until disableMetrics() is called
+     */
+    public synchronized TaskStoreMetrics enableMetrics() {
+        if (metrics == null) {
+            TaskStoreMetrics created = new TaskStoreMetrics(this);
+            created.seed(allTasks);
+            metrics = created;
+        }
+        return metrics;
+    }
+
+    /**
+     * Stop collecting telemetry. The store no longer updates the metrics
+     * returned by enableMetrics(); unregister them from JMX separately.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /** Return the metrics being collected, or null if they are disabled */
+    public synchronized TaskStoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Return the tasks in insertion order */
+    public synchronized List<Task> getAllTasks() {
+        return Collections.unmodifiableList(allTasks);
+    }
+
+    /** Return the tasks in stack order, bottom of the stack first */
+    public synchronized Collection<Task> getTaskStack() {
+        // The most recently added task is the last one in insertion order
+        return Collections.unmodifiableList(allTasks);
+    }
+
+    /** Return the tasks in queue order, front of the queue first */
+    public synchronized Collection<Task> getTaskQueue() {
+        return Collections.unmodifiableCollection(taskQueue);
+    }
+
+    /** Return the tasks in the priority queue, in heap (not sorted) order */
+    public synchronized Collection<Task> getPriorityTasks() {
+        return Collections.unmodifiableCollection(priorityTasks);
+    }
+
+    /**
+     * Iterate over the tasks in priority order without copying the heap. The
+     * store must not be changed while the iterator is in use.
+     * @return An iterator, highest priority first
+     */
+    public synchronized Iterator<Task> priorityOrder() {
+        return priorityTasks.orderedIterator();
+    }
+
+    /**
+     * Return the k highest priority tasks in O(k log k)
+     * @param k The most tasks to return
+     * @return Up to k tasks, highest priority first
+     */
+    public synchronized List<Task> topN(int k) {
+        return priorityTasks.topN(k);
+    }
+
+    /**
+     * Write one page of tasks in priority order, streaming from the heap
+     * @param out The destination
+     * @param offset The number of tasks to skip first
+     * @param limit The most tasks to write
+     * @return The number of tasks written
+     */
+    public synchronized int renderPriorityOrder(Appendable out, int offset, int limit) throws IOException {
+        return TaskRenderer.render(out, priorityTasks.orderedIterator(), offset, limit);
+    }
+
+    /** Return the top of the stack, or null if it is empty */
+    public synchronized Task peekStack() {
+        return allTasks.isEmpty() ? null : allTasks.get(allTasks.size() - 1);
+    }
+
+    /** Return the front of the queue, or null if it is empty */
+    public synchronized Task peekQueue() {
+        return taskQueue.peek();
+    }
+
+    /** Return the highest priority task, or null if there are none */
+    public synchronized Task peekPriority() {
+        return priorityTasks.peek();
+    }
+
+    /**
+     * Find the highest priority tasks whose name starts with some text, ignoring case
+     * @param prefix The start of the name
+     * @param limit The most results to return
+     * @return The matching tasks, highest priority first
+     */
+    public synchronized List<Task> searchByPrefix(String prefix, int limit) {
+        return searchIndex.searchPrefix(prefix, limit);
+    }
+
+    /**
+     * Find the highest priority tasks whose name contains some text, ignoring case
+     * @param text The text to look for
+     * @param limit The most results to return
+     * @return The matching tasks, highest priority first
+     */
+    public synchronized List<Task> searchByName(String text, int limit) {
+        return searchIndex.searchSubstring(text, limit);
+    }
+
+    /** Return the number of tasks in the store */
+    public synchronized int size() {
+        return allTasks.size();
+    }
+
+    private void load(List<Task> tasks) {
+        allTasks.addAll(tasks);
+        taskQueue.addAll(tasks);
+        renumber(0);
+        // Building the heap from a collection heapifies in O(n)
+        priorityTasks.rebuild(allTasks);
+    }
+
+    /** Apply the opposite of a history entry and log its effect */
+    private long reverse(int slot) {
+        Task task = history.taskAt(slot);
+        switch (history.typeAt(slot)) {
+            case UndoHistory.ADD:
+                pendingRemovals.add(task);
+                return logChange(TaskWriteAheadLog.OP_REMOVE, task, history.indexAt(slot));
+            case UndoHistory.REMOVE:
+                flushRemovals(); // Positions below assume earlier removals are done
+                insertAt(history.indexAt(slot), task);
+                return logChange(TaskWriteAheadLog.OP_INSERT, task, history.indexAt(slot));
+            case UndoHistory.REPRIORITIZE: {
+                flushRemovals(); // The logged position assumes earlier removals are done
+                long sequence = logPriority(task, history.oldPriorityAt(slot));
+                applyPriority(task, history.oldPriorityAt(slot));
+                return sequence;
+            }
+            default: {
+                flushRemovals();
+                long sequence = logRename(task, history.oldNameAt(slot));
+                applyName(task, history.oldNameAt(slot));
+                return sequence;
+            }
+        }
+    }
+
+    /** Apply a history entry again and log its effect */
+    private long reapply(int slot) {
+        Task task = history.taskAt(slot);
+        switch (history.typeAt(slot)) {
+            case UndoHistory.ADD:
+                flushRemovals();
+                insertAt(history.indexAt(slot), task);
+                return logChange(TaskWriteAheadLog.OP_INSERT, task, history.indexAt(slot));
+            case UndoHistory.REMOVE:
+                pendingRemovals.add(task);
+                return logChange(TaskWriteAheadLog.OP_REMOVE, task, history.indexAt(slot));
+            case UndoHistory.REPRIORITIZE: {
+                flushRemovals(); // The logged position assumes earlier removals are done
+                long sequence = logPriority(task, history.newPriorityAt(slot));
+                applyPriority(task, history.newPriorityAt(slot));
+                return sequence;
+            }
+            default: {
+                flushRemovals();
+                long sequence = logRename(task, history.newNameAt(slot));
+                applyName(task, history.newNameAt(slot));
+                return sequence;
+            }
+        }
+    }
+
+    /** Remove every pending task from all views in one pass per view */
+    private void flushRemovals() {
+        if (pendingRemovals.isEmpty()) {
+            return;
+        }
+        allTasks.removeIf(pendingRemovals::contains);
+        taskQueue.removeIf(pendingRemovals::contains);
+        for (Task task : pendingRemovals) {
+            task.storeIndex = -1;
+            searchIndex.remove(task);
+        }
+        renumber(0);
+        boolean rebuild = pendingRemovals.size() * log2(priorityTasks.size()) > priorityTasks.size();
+        if (!rebuild) {
+            for (Task task : pendingRemovals) {
+                priorityTasks.remove(task);
+            }
+        } else {
+            // Rebuilding the heap is O(n), cheaper than many O(log n) removals
+            priorityTasks.rebuild(allTasks);
+        }
+        if (metrics != null) {
+            for (Task task : pendingRemovals) {
+                metrics.removed(task);
+            }
+            countHeapWork(rebuild, pendingRemovals.size());
+        }
+        pendingRemovals.clear();
+    }
+
+    private void replayRecord(byte op, String name, int priority, int argument, int position, String newName) {
+        switch (op) {
+            case TaskWriteAheadLog.OP_ADD:
+                insertAt(allTasks.size(), new Task(name, priority));
+                break;
+            case TaskWriteAheadLog.OP_INSERT:
+                insertAt(argument, new Task(name, priority));
+                break;
+            case TaskWriteAheadLog.OP_REMOVE: {
+                Task wanted = new Task(name, priority);
+                int index = argument < allTasks.size() && allTasks.get(argument).equals(wanted)
+                        ? argument : allTasks.indexOf(wanted);
+                if (index >= 0) {
+                    removeAt(index);
+                }
+                break;
+            }
+            case TaskWriteAheadLog.OP_PRIORITY_AT: {
+                Task stored = replayTarget(name, priority, position);
+                if (stored != null) {
+                    applyPriority(stored, argument);
+                }
+                break;
+            }
+            case TaskWriteAheadLog.OP_RENAME_AT: {
+                Task stored = replayTarget(name, priority, position);
+                if (stored != null) {
+                    applyName(stored, newName);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown log operation: " + op);
+        }
+    }
+
+    /**
+     * Find the task a replayed record changes: the one at its logged position,
+     * or the first equal task if that position holds another, as OP_REMOVE does
+     */
+    private Task replayTarget(String name, int priority, int position) {
+        Task wanted = new Task(name, priority);
+        if (position >= 0 && position < allTasks.size() && allTasks.get(position).equals(wanted)) {
+            return allTasks.get(position);
+        }
+        return find(wanted);
+    }
+
+    private void insertAt(int index, Task task) {
+        checkNotStored(task);
+        allTasks.add(index, task);
+        taskQueue.add(index, task);
+        renumber(index);
+        priorityTasks.add(task);
+        searchIndex.add(task);
+        if (metrics != null) {
+            metrics.added(task);
+            metrics.heapOperations(1);
+        }
+    }
+
+    private Task removeAt(int index) {
+        Task task = allTasks.remove(index);
+        taskQueue.remove(index);
+        task.storeIndex = -1;
+        renumber(index);
+        priorityTasks.remove(task);
+        searchIndex.remove(task);
+        if (metrics != null) {
+            metrics.removed(task);
+            metrics.heapOperations(1);
+        }
+        return task;
+    }
+
+    private void applyPriority(Task task, int newPriority) {
+        int oldPriority = task.getPriority();
+        task.setPriority(newPriority);
+        priorityTasks.update(task);
+        searchIndex.priorityChanged(task);
+        if (metrics != null) {
+            metrics.priorityChanged(oldPriority, newPriority);
+            metrics.heapOperations(1);
+        }
+    }
+
+    private void applyName(Task task, String newName) {
+        task.setName(newName);
+        searchIndex.renamed(task);
+        if (metrics != null) {
+            metrics.renamed();
+        }
+    }
+
+    private void countHeapWork(boolean rebuilt, int operations) {
+        if (rebuilt) {
+            metrics.heapRebuilt();
+        } else {
+            metrics.heapOperations(operations);
+        }
+    }
+
+    private Task find(Task task) {
+        if (priorityTasks.contains(task)) {
+            return task; // The stored task itself, found in O(1)
+        }
+        int index = allTasks.indexOf(task);
+        return index >= 0 ? allTasks.get(index) : null;
+    }
+
+    /**
+     * Give new tasks their positions from index on. A task that already has one
+     * is stored or appears twice, and then every position given here is taken back.
+     */
+    private static void number(Collection<Task> tasks, int index) {
+        int position = index;
+        for (Task task : tasks) {
+            if (task.heapIndex >= 0 || task.storeIndex >= 0) {
+                int given = position - index;
+                for (Task numbered : tasks) {
+                    if (given-- == 0) {
+                        break;
+                    }
+                    numbered.storeIndex = -1;
+                }
+                checkNotStored(task);
+                throw new IllegalArgumentException("Task is added twice: " + task);
+            }
+            task.storeIndex = position++;
+        }
+    }
+
+    // A task sits in at most one heap, so checking here keeps a repeated add from
+    // reaching the list and queue before the heap rejects it
+    private static void checkNotStored(Task task) {
+        if (task.heapIndex >= 0) {
+            throw new IllegalArgumentException("Task is already stored: " + task);
+        }
+    }
+
+    private static int log2(int n) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(n, 1));
+    }
+
+    private long logChange(byte op, Task task, int argument) {
+        return log == null ? 0 : log.append(op, task.getName(), task.getPriority(), argument);
+    }
+
+    // Priority and rename records carry the task's position, so replay changes the
+    // same one of several equal tasks
+    private long logPriority(Task task, int newPriority) {
+        return log == null ? 0 : log.appendPriority(task.getName(), task.getPriority(), newPriority, task.storeIndex);
+    }
+
+    private long logRename(Task task, String newName) {
+        return log == null ? 0 : log.appendRename(task.getName(), newName, task.getPriority(), task.storeIndex);
+    }
+
+    // Keep each task's storeIndex equal to its list position, the way IndexedTaskHeap
+    // keeps heapIndex. Only tasks from the change onwards move, and the list insert
+    // or remove that moved them already cost as much.
+    private void renumber(int from) {
+        for (int i = from; i < allTasks.size(); i++) {
+            allTasks.get(i).storeIndex = i;
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        TaskWriteAheadLog current;
+        synchronized (this) {
+            current = log;
+        }
+        if (current != null && sequence > 0) {
+            current.awaitDurable(sequence);
+        }
+    }
+}
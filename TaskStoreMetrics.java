@@ -0,0 +1,284 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * TaskStoreMetrics collects telemetry for one TaskStore: queue depth per
+ * priority, how long tasks wait between being added and removed, and counts of
+ * store, undo and heap operations. A store only has metrics after
+ * enableMetrics() is called; until then its hot paths skip a single null check
+ * and nothing else.
+ *
+ * The store calls the recording methods while holding its lock, so each value
+ * has a single writer and is updated with plain ordered stores instead of
+ * atomic read-modify-write operations. Recording never allocates. Readers, such
+ * as a JMX client, may call the getters from any thread.
+ */
+public class TaskStoreMetrics implements TaskStoreMetricsMBean {
+    /** Priorities 0 to 14 are tracked one by one; 15 and above share the last slot */
+    public static final int PRIORITY_SLOTS = 16;
+
+    private static final int ADDS = 0;
+    private static final int REMOVES = 1;
+    private static final int PRIORITY_CHANGES = 2;
+    private static final int RENAMES = 3;
+    private static final int UNDOS = 4;
+    private static final int REDOS = 5;
+    private static final int HEAP_OPERATIONS = 6;
+    private static final int HEAP_REBUILDS = 7;
+    private static final int COUNTERS = 8;
+
+    private final Object lock;
+    private final AtomicLongArray depth = new AtomicLongArray(PRIORITY_SLOTS);
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+    private final LatencyHistogram[] waitTimes = new LatencyHistogram[PRIORITY_SLOTS];
+    private volatile long resetNanos = System.nanoTime();
+    private ObjectName registeredName;
+
+    /**
+     * @param lock The lock the store holds while recording
+     */
+    TaskStoreMetrics(Object lock) {
+        this.lock = lock;
+        for (int i = 0; i < PRIORITY_SLOTS; i++) {
+            waitTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Publish these metrics on the platform MBean server, where tools such as
+     * JConsole and Java Mission Control can read them
+     * @param name The name of the store, used in the object name
+     * @return The object name the metrics were registered under
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        unregister();
+        ObjectName objectName = new ObjectName("TaskStore:type=TaskStoreMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+        return objectName;
+    }
+
+    /** Remove these metrics from the platform MBean server, if registered */
+    public synchronized void unregister() throws JMException {
+        if (registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(registeredName)) {
+                server.unregisterMBean(registeredName);
+            }
+            registeredName = null;
+        }
+    }
+
+    // Recording, called by the store with its lock held
+
+    /** Start counting the tasks already in the store; their wait times are unknown */
+    void seed(Iterable<Task> tasks) {
+        for (Task task : tasks) {
+            task.enqueuedNanos = 0;
+            increment(depth, slot(task.getPriority()), 1);
+        }
+    }
+
+    void added(Task task) {
+        task.enqueuedNanos = System.nanoTime();
+        increment(depth, slot(task.getPriority()), 1);
+        increment(counters, ADDS, 1);
+    }
+
+    void removed(Task task) {
+        int slot = slot(task.getPriority());
+        increment(depth, slot, -1);
+        increment(counters, REMOVES, 1);
+        if (task.enqueuedNanos != 0) {
+            waitTimes[slot].record(System.nanoTime() - task.enqueuedNanos);
+            task.enqueuedNanos = 0;
+        }
+    }
+
+    void priorityChanged(int oldPriority, int newPriority) {
+        increment(depth, slot(oldPriority), -1);
+        increment(depth, slot(newPriority), 1);
+        increment(counters, PRIORITY_CHANGES, 1);
+    }
+
+    void renamed() {
+        increment(counters, RENAMES, 1);
+    }
+
+    void undone() {
+        increment(counters, UNDOS, 1);
+    }
+
+    void redone() {
+        increment(counters, REDOS, 1);
+    }
+
+    void heapOperations(int count) {
+        increment(counters, HEAP_OPERATIONS, count);
+    }
+
+    void heapRebuilt() {
+        increment(counters, HEAP_REBUILDS, 1);
+    }
+
+    // JMX attributes and operations
+
+    @Override
+    public long[] getQueueDepthByPriority() {
+        long[] result = new long[PRIORITY_SLOTS];
+        for (int i = 0; i < PRIORITY_SLOTS; i++) {
+            result[i] = depth.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getAddCount() {
+        return counters.get(ADDS);
+    }
+
+    @Override
+    public long getRemoveCount() {
+        return counters.get(REMOVES);
+    }
+
+    @Override
+    public long getPriorityChangeCount() {
+        return counters.get(PRIORITY_CHANGES);
+    }
+
+    @Override
+    public long getRenameCount() {
+        return counters.get(RENAMES);
+    }
+
+    @Override
+    public long getUndoCount() {
+        return counters.get(UNDOS);
+    }
+
+    @Override
+    public long getRedoCount() {
+        return counters.get(REDOS);
+    }
+
+    @Override
+    public long getHeapOperationCount() {
+        return counters.get(HEAP_OPERATIONS);
+    }
+
+    @Override
+    public long getHeapRebuildCount() {
+        return counters.get(HEAP_REBUILDS);
+    }
+
+    @Override
+    public double getOperationsPerSecond() {
+        return perSecond(getAddCount() + getRemoveCount() + getPriorityChangeCount() + getRenameCount());
+    }
+
+    @Override
+    public double getUndoRedoPerSecond() {
+        return perSecond(getUndoCount() + getRedoCount());
+    }
+
+    @Override
+    public long getWaitTimeCount() {
+        long count = 0;
+        for (LatencyHistogram histogram : waitTimes) {
+            count += histogram.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public double getWaitTimeMeanMillis() {
+        double total = 0;
+        long count = 0;
+        for (LatencyHistogram histogram : waitTimes) {
+            total += histogram.getMean() * histogram.getCount();
+            count += histogram.getCount();
+        }
+        return count == 0 ? 0 : toMillis(total / count);
+    }
+
+    @Override
+    public double getWaitTimeMaxMillis() {
+        return toMillis(maxWaitTime());
+    }
+
+    @Override
+    public double getWaitTimeP50Millis() {
+        return waitTimeMillisAtPercentile(50);
+    }
+
+    @Override
+    public double getWaitTimeP99Millis() {
+        return waitTimeMillisAtPercentile(99);
+    }
+
+    @Override
+    public double getWaitTimeP999Millis() {
+        return waitTimeMillisAtPercentile(99.9);
+    }
+
+    @Override
+    public double waitTimeMillisAtPercentile(int priority, double percentile) {
+        return toMillis(waitTimes[slot(priority)].getValueAtPercentile(percentile));
+    }
+
+    /**
+     * Return a wait time percentile across all priorities
+     * @param percentile A percentile from 0 to 100
+     */
+    public double waitTimeMillisAtPercentile(double percentile) {
+        long[] buckets = null;
+        for (LatencyHistogram histogram : waitTimes) {
+            buckets = histogram.snapshot(buckets);
+        }
+        return toMillis(LatencyHistogram.valueAtPercentile(buckets, percentile, maxWaitTime()));
+    }
+
+    @Override
+    public void resetStatistics() {
+        // Taken so that no recording is in progress while the values are cleared
+        synchronized (lock) {
+            for (int i = 0; i < COUNTERS; i++) {
+                counters.lazySet(i, 0);
+            }
+            for (LatencyHistogram histogram : waitTimes) {
+                histogram.reset();
+            }
+            resetNanos = System.nanoTime();
+        }
+    }
+
+    private long maxWaitTime() {
+        long max = 0;
+        for (LatencyHistogram histogram : waitTimes) {
+            max = Math.max(max, histogram.getMax());
+        }
+        return max;
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - resetNanos;
+        return elapsed <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static int slot(int priority) {
+        return Math.min(Math.max(priority, 0), PRIORITY_SLOTS - 1);
+    }
+
+    private static void increment(AtomicLongArray array, int index, long delta) {
+        array.lazySet(index, array.get(index) + delta);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * TaskStoreMetricsMBean is the JMX view of a TaskStore's telemetry. Wait times
+ * are measured from when a task is added to when it is removed, and reported in
+ * milliseconds.
+ */
+public interface TaskStoreMetricsMBean {
+    /** Return the number of tasks in the store, by priority. Index i is priority i; the last entry also counts every higher priority. */
+    long[] getQueueDepthByPriority();
+
+    long getAddCount();
+
+    long getRemoveCount();
+
+    long getPriorityChangeCount();
+
+    long getRenameCount();
+
+    long getUndoCount();
+
+    long getRedoCount();
+
+    /** Return the number of heap inserts, removals and repositionings */
+    long getHeapOperationCount();
+
+    /** Return the number of times the whole heap was rebuilt */
+    long getHeapRebuildCount();
+
+    /** Return adds, removes, priority changes and renames per second since the last reset */
+    double getOperationsPerSecond();
+
+    /** Return undos and redos per second since the last reset */
+    double getUndoRedoPerSecond();
+
+    long getWaitTimeCount();
+
+    double getWaitTimeMeanMillis();
+
+    double getWaitTimeMaxMillis();
+
+    double getWaitTimeP50Millis();
+
+    double getWaitTimeP99Millis();
+
+    double getWaitTimeP999Millis();
+
+    /**
+     * Return a wait time percentile for one priority
+     * @param priority The priority
+     * @param percentile A percentile from 0 to 100
+     */
+    double waitTimeMillisAtPercentile(int priority, double percentile);
+
+    /** Set every counter and histogram back to zero. Queue depths are kept. */
+    void resetStatistics();
+}
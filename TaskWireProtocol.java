@@ -0,0 +1,107 @@
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TaskWireProtocol is the binary format spoken between TaskPartitionClient and
+ * TaskPartitionNode. Every message is a frame of [int length][byte code][body],
+ * where length counts the code and body. Replies come back in request order on
+ * each connection, so a client may send many requests before reading any reply.
+ *
+ * Requests (code is the operation):
+ *   OP_ENQUEUE [int count][count tasks]    reply [int count accepted]
+ *   OP_DEQUEUE [int max]                   reply [int count][count tasks]
+ *     (count may be less than max when more tasks would not fit in MAX_FRAME)
+ *   OP_SIZE                                reply [int size]
+ * Replies use STATUS_OK as their code. A task is [int priority][int name length][name bytes].
+ */
+public final class TaskWireProtocol {
+    public static final byte OP_ENQUEUE = 1;
+    public static final byte OP_DEQUEUE = 2;
+    public static final byte OP_SIZE = 3;
+    public static final byte STATUS_OK = 0;
+
+    /** Largest frame either side will accept */
+    public static final int MAX_FRAME = 16 * 1024 * 1024;
+
+    private TaskWireProtocol() {
+    }
+
+    /**
+     * Make sure a buffer in write mode has room for more bytes
+     * @param buffer The buffer
+     * @param extra The number of bytes about to be written
+     * @return The same buffer, or a larger copy of it
+     */
+    static ByteBuffer ensure(ByteBuffer buffer, int extra) {
+        if (buffer.remaining() >= extra) {
+            return buffer;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * Start a frame. The caller must have made room for 5 bytes.
+     * @return The position to pass to endFrame
+     */
+    static int beginFrame(ByteBuffer buffer, byte code) {
+        int start = buffer.position();
+        buffer.putInt(0); // Length is filled in by endFrame
+        buffer.put(code);
+        return start;
+    }
+
+    /** Fill in the length of the frame started at the given position */
+    static void endFrame(ByteBuffer buffer, int start) throws ProtocolException {
+        int length = buffer.position() - start - 4;
+        if (length > MAX_FRAME) {
+            throw new ProtocolException("Frame too large: " + length);
+        }
+        buffer.putInt(start, length);
+    }
+
+    /** Append one task, growing the buffer if needed */
+    static ByteBuffer putTask(ByteBuffer buffer, Task task) {
+        return putTask(buffer, task.getPriority(), encodeName(task));
+    }
+
+    /** Append one task whose name is already encoded, growing the buffer if needed */
+    static ByteBuffer putTask(ByteBuffer buffer, int priority, byte[] name) {
+        buffer = ensure(buffer, 8 + name.length);
+        buffer.putInt(priority).putInt(name.length).put(name);
+        return buffer;
+    }
+
+    /** Return a task's name as it is sent: 8 more bytes than this make up the task */
+    static byte[] encodeName(Task task) {
+        return task.getName().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Read one task written by putTask */
+    static Task getTask(ByteBuffer buffer) throws ProtocolException {
+        try {
+            int priority = buffer.getInt();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new ProtocolException("Bad name length: " + length);
+            }
+            String name = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return new Task(name, priority);
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Truncated task");
+        }
+    }
+
+    /** Check the length prefix of an incoming frame */
+    static void checkLength(int length) throws ProtocolException {
+        if (length < 1 || length > MAX_FRAME) {
+            throw new ProtocolException("Bad frame length: " + length);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * TaskWriteAheadLog appends every change made to a TaskStore to a file before the
+ * change is acknowledged. Records are checksummed so a torn write at the end of the
+ * file is detected and dropped on recovery.
+ *
+ * Appends only copy the record into a memory buffer. A background flusher thread
+ * writes everything buffered so far and calls force() once, so many callers
+ * waiting at the same time share a single fsync (group commit).
+ *
+ * File layout: an 8 byte generation number, then records of the form
+ * [int payload length][int CRC32 of payload][payload]. The payload is
+ * [byte op][int priority][int argument][name bytes]. OP_PRIORITY_AT and
+ * OP_RENAME_AT add an [int position] after the argument, so replay changes the
+ * same task among equal ones. OP_RENAME_AT records store the old and new names
+ * back to back, with the length of the old name as the argument.
+ */
+public class TaskWriteAheadLog implements Closeable {
+    public static final byte OP_ADD = 1;
+    public static final byte OP_REMOVE = 3;
+    public static final byte OP_INSERT = 6;
+    public static final byte OP_PRIORITY_AT = 7;
+    public static final byte OP_RENAME_AT = 8;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 8;
+
+    /** Receives the records read back during recovery */
+    public interface RecordHandler {
+        /**
+         * @param op The operation code
+         * @param name The task name (the old name for OP_RENAME_AT)
+         * @param priority The task priority
+         * @param argument The new priority for OP_PRIORITY_AT, the position for
+         *                 OP_INSERT and OP_REMOVE, otherwise unused
+         * @param position The task's position for OP_PRIORITY_AT and OP_RENAME_AT, otherwise -1
+         * @param newName The new name for OP_RENAME_AT, otherwise null
+         */
+        void onRecord(byte op, String name, int priority, int argument, int position, String newName);
+    }
+
+    private final FileChannel channel;
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32();
+    private long generation;
+
+    // Guarded by this: records waiting to be written, and the sequence numbers
+    // of the last appended and last durable record
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appendedSequence = 0;
+    private long durableSequence = 0;
+    private IOException failure;
+    private boolean closed = false;
+
+    /**
+     * Open a log file, creating it if it does not exist
+     * @param file The log file
+     * @param generation The generation to write if the file is new
+     */
+    public TaskWriteAheadLog(Path file, long generation) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(generation);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            this.generation = header.getLong(0);
+        }
+        this.flusher = new Thread(this::runFlusher, "task-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Get the generation stored in the log header
+     * @return The log generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Read every intact record in the log, in order. Anything after the first
+     * incomplete or corrupt record is cut off the end of the file.
+     * @param handler The callback for each record
+     * @return The number of records read
+     */
+    public synchronized int replay(RecordHandler handler) throws IOException {
+        long position = HEADER_SIZE;
+        long end = channel.size();
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_OVERHEAD);
+        CRC32 check = new CRC32();
+        int count = 0;
+
+        while (position + RECORD_OVERHEAD <= end) {
+            prefix.clear();
+            readFully(prefix, position);
+            int length = prefix.getInt(0);
+            int expectedCrc = prefix.getInt(4);
+            if (length <= 0 || position + RECORD_OVERHEAD + length > end) {
+                break; // Torn write at the end of the file
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + RECORD_OVERHEAD);
+            check.reset();
+            check.update(payload.array(), 0, length);
+            if ((int) check.getValue() != expectedCrc) {
+                break;
+            }
+            byte op = payload.get(0);
+            int priority = payload.getInt(1);
+            int argument = payload.getInt(5);
+            boolean positioned = op == OP_PRIORITY_AT || op == OP_RENAME_AT;
+            int taskPosition = positioned ? payload.getInt(9) : -1;
+            int names = positioned ? 13 : 9;
+            String name;
+            String newName = null;
+            if (op == OP_RENAME_AT) {
+                name = new String(payload.array(), names, argument, StandardCharsets.UTF_8);
+                newName = new String(payload.array(), names + argument, length - names - argument, StandardCharsets.UTF_8);
+            } else {
+                name = new String(payload.array(), names, length - names, StandardCharsets.UTF_8);
+            }
+            handler.onRecord(op, name, priority, argument, taskPosition, newName);
+            position += RECORD_OVERHEAD + length;
+            count++;
+        }
+
+        if (position < end) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return count;
+    }
+
+    /**
+     * Buffer a record for writing. The record is not durable until
+     * awaitDurable has returned for the sequence number handed back.
+     * @param op The operation code
+     * @param name The task name
+     * @param priority The task priority
+     * @param argument The position for OP_INSERT and OP_REMOVE, otherwise unused
+     * @return The sequence number of the record
+     */
+    public long append(byte op, String name, int priority, int argument) {
+        return append(op, name.getBytes(StandardCharsets.UTF_8), priority, argument, -1);
+    }
+
+    /**
+     * Buffer an OP_PRIORITY_AT record
+     * @param name The task name
+     * @param priority The priority before the change
+     * @param newPriority The priority after the change
+     * @param position The task's position in insertion order
+     * @return The sequence number of the record
+     */
+    public long appendPriority(String name, int priority, int newPriority, int position) {
+        return append(OP_PRIORITY_AT, name.getBytes(StandardCharsets.UTF_8), priority, newPriority, position);
+    }
+
+    /**
+     * Buffer an OP_RENAME_AT record
+     * @param oldName The name before the change
+     * @param newName The name after the change
+     * @param priority The task priority
+     * @param position The task's position in insertion order
+     * @return The sequence number of the record
+     */
+    public long appendRename(String oldName, String newName, int priority, int position) {
+        byte[] oldBytes = oldName.getBytes(StandardCharsets.UTF_8);
+        byte[] newBytes = newName.getBytes(StandardCharsets.UTF_8);
+        byte[] names = new byte[oldBytes.length + newBytes.length];
+        System.arraycopy(oldBytes, 0, names, 0, oldBytes.length);
+        System.arraycopy(newBytes, 0, names, oldBytes.length, newBytes.length);
+        return append(OP_RENAME_AT, names, priority, oldBytes.length, position);
+    }
+
+    // Only OP_PRIORITY_AT and OP_RENAME_AT records hold the position
+    private synchronized long append(byte op, byte[] nameBytes, int priority, int argument, int position) {
+        if (closed) {
+            throw new IllegalStateException("Log is closed");
+        }
+        boolean positioned = op == OP_PRIORITY_AT || op == OP_RENAME_AT;
+        int length = (positioned ? 13 : 9) + nameBytes.length;
+        ensurePendingRoom(RECORD_OVERHEAD + length);
+
+        int start = pending.position();
+        pending.putInt(length);
+        pending.putInt(0); // Checksum is filled in below
+        pending.put(op);
+        pending.putInt(priority);
+        pending.putInt(argument);
+        if (positioned) {
+            pending.putInt(position);
+        }
+        pending.put(nameBytes);
+
+        crc.reset();
+        crc.update(pending.array(), start + RECORD_OVERHEAD, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+
+        notifyAll(); // Wake the flusher
+        return ++appendedSequence;
+    }
+
+    /**
+     * Wait until the record with the given sequence number is on disk
+     * @param sequence A sequence number returned by append
+     * @throws UncheckedIOException if writing the log failed
+     */
+    public synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        while (durableSequence < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    /**
+     * Wait until every record appended so far is on disk
+     */
+    public void sync() {
+        long sequence;
+        synchronized (this) {
+            sequence = appendedSequence;
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Discard every record and start a new generation. Callers must make sure
+     * the records are covered by a snapshot first.
+     * @param newGeneration The generation to record in the header
+     */
+    public synchronized void reset(long newGeneration) throws IOException {
+        sync();
+        channel.truncate(HEADER_SIZE);
+        writeHeader(newGeneration);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        sync();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void runFlusher() {
+        while (true) {
+            long batchEnd;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0) {
+                    return; // Closed and nothing left to write
+                }
+                // Swap buffers so appenders can keep going while this batch is written
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                batchEnd = appendedSequence;
+            }
+
+            try {
+                writing.flip();
+                synchronized (channel) {
+                    while (writing.hasRemaining()) {
+                        channel.write(writing, channel.size());
+                    }
+                    channel.force(false);
+                }
+                writing.clear();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                durableSequence = batchEnd;
+                notifyAll();
+            }
+        }
+    }
+
+    private void ensurePendingRoom(int bytes) {
+        if (pending.remaining() < bytes) {
+            int capacity = pending.capacity();
+            while (capacity - pending.position() < bytes) {
+                capacity *= 2;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(capacity);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    private void writeHeader(long newGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(0, newGeneration);
+        synchronized (channel) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        this.generation = newGeneration;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log file");
+            }
+        }
+    }
+}
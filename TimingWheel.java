@@ -0,0 +1,251 @@
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * TimingWheel is a hierarchical timing wheel that holds tasks until a given tick.
+ * Level 0 has one slot per tick, and each higher level has slots 64 times wider.
+ * A timer sits in the lowest level whose slot range still separates it from the
+ * current tick. When the wheel reaches a wider slot, that slot's timers are moved
+ * down a level. Scheduling and cancelling are O(1) and there is no per-timer thread.
+ *
+ * Any thread may schedule or cancel. Requests go through lock-free queues, and
+ * only the thread that calls advanceTo touches the wheel itself.
+ */
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6; // 64^6 ticks, about 2 years at 1 ms per tick
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    /** Handle for one scheduled task */
+    public static final class Timer {
+        private static final AtomicIntegerFieldUpdater<Timer> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timer.class, "state");
+
+        private final Task task;
+        private final long deadlineTick;
+        private final TimingWheel wheel;
+        private volatile int state = PENDING;
+
+        // Owned by the advancing thread
+        private Timer prev;
+        private Timer next;
+        private Timer[] bucket;
+        private int slot;
+
+        private Timer(TimingWheel wheel, Task task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /** Return the scheduled task */
+        public Task getTask() {
+            return task;
+        }
+
+        /** Return the tick at which the task is due */
+        public long getDeadlineTick() {
+            return deadlineTick;
+        }
+
+        /**
+         * Cancel the timer in O(1)
+         * @return True if the timer was cancelled, false if it had already fired
+         *         or been cancelled
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled.offer(this);
+            return true;
+        }
+
+        /** Return true if the task has been handed out as due */
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        /** Return true if the timer was cancelled */
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+    }
+
+    // wheels[level][slot] is the head of a doubly linked list of timers
+    private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+    // Timers too far away for the top level; looked at again when the top level wraps
+    private final Timer[] overflow = new Timer[1];
+    private final ConcurrentLinkedQueue<Timer> incoming = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+    private volatile long currentTick;
+    private int timerCount = 0;
+
+    /**
+     * Create a wheel
+     * @param startTick The tick the wheel starts at
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Schedule a task. Safe to call from any thread.
+     * @param task The task to hand out when it is due
+     * @param deadlineTick The tick at which the task is due
+     * @return A handle that can cancel the timer
+     */
+    public Timer schedule(Task task, long deadlineTick) {
+        Timer timer = new Timer(this, task, deadlineTick);
+        incoming.offer(timer);
+        return timer;
+    }
+
+    /** Return the last tick processed */
+    public long currentTick() {
+        return currentTick;
+    }
+
+    /** Return the number of timers waiting in the wheel (not counting unprocessed requests) */
+    public int size() {
+        return timerCount;
+    }
+
+    /**
+     * Move the wheel forward, collecting every task that has become due.
+     * Only one thread may call this.
+     * @param tick The tick to advance to
+     * @param expired The list that receives the due tasks, in deadline order by tick
+     * @return The number of tasks collected
+     */
+    public int advanceTo(long tick, List<Task> expired) {
+        int before = expired.size();
+        drainRequests(expired);
+        long now = currentTick;
+        while (now < tick) {
+            if (timerCount == 0) {
+                // Nothing to fire on the way, so jump straight to the target
+                now = tick;
+                currentTick = now;
+                drainRequests(expired);
+                break;
+            }
+            now++;
+            currentTick = now;
+            cascade(now, expired);
+            fireSlot(wheels[0], (int) (now & (SLOTS - 1)), expired);
+        }
+        return expired.size() - before;
+    }
+
+    private void drainRequests(List<Task> expired) {
+        Timer timer;
+        while ((timer = cancelled.poll()) != null) {
+            if (timer.bucket != null) {
+                unlink(timer);
+            }
+        }
+        while ((timer = incoming.poll()) != null) {
+            if (timer.state == PENDING) {
+                place(timer, expired);
+            }
+        }
+    }
+
+    /** Move the timers of every wider slot that starts at this tick down a level */
+    private void cascade(long tick, List<Task> expired) {
+        int top = 0;
+        while (top + 1 < LEVELS && (tick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        if (top == LEVELS - 1 && (tick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+            replaceAll(overflow, 0, expired);
+        }
+        // Highest level first, so timers can fall through several levels at once
+        for (int level = top; level >= 1; level--) {
+            int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            replaceAll(wheels[level], slot, expired);
+        }
+    }
+
+    private void replaceAll(Timer[] bucket, int slot, List<Task> expired) {
+        Timer timer = bucket[slot];
+        bucket[slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            timer.bucket = null;
+            timerCount--;
+            place(timer, expired);
+            timer = next;
+        }
+    }
+
+    private void fireSlot(Timer[] bucket, int slot, List<Task> expired) {
+        Timer timer = bucket[slot];
+        bucket[slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            timer.bucket = null;
+            timerCount--;
+            if (Timer.STATE.compareAndSet(timer, PENDING, EXPIRED)) {
+                expired.add(timer.task);
+            }
+            timer = next;
+        }
+    }
+
+    private void place(Timer timer, List<Task> expired) {
+        long now = currentTick;
+        if (timer.deadlineTick <= now) {
+            if (Timer.STATE.compareAndSet(timer, PENDING, EXPIRED)) {
+                expired.add(timer.task);
+            }
+            return;
+        }
+        // The highest digit (in base 64) where the deadline and now differ picks the level
+        int level = (63 - Long.numberOfLeadingZeros(timer.deadlineTick ^ now)) / SLOT_BITS;
+        if (level >= LEVELS) {
+            link(timer, overflow, 0);
+        } else {
+            int slot = (int) ((timer.deadlineTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            link(timer, wheels[level], slot);
+        }
+    }
+
+    private void link(Timer timer, Timer[] bucket, int slot) {
+        Timer head = bucket[slot];
+        timer.next = head;
+        timer.prev = null;
+        if (head != null) {
+            head.prev = timer;
+        }
+        bucket[slot] = timer;
+        timer.bucket = bucket;
+        timer.slot = slot;
+        timerCount++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            timer.bucket[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = null;
+        timerCount--;
+    }
+}
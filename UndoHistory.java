@@ -0,0 +1,236 @@
+/**
+ * UndoHistory is a fixed-size journal of reversible task changes, stored in a ring
+ * buffer. When the buffer is full the oldest change is forgotten, so memory stays
+ * the same no matter how long the program runs.
+ *
+ * Changes before the cursor can be undone and changes after it can be redone.
+ * Recording a new change throws away anything that could have been redone.
+ * Repeated priority changes or renames of the same task are merged into one entry.
+ */
+public class UndoHistory {
+    public static final byte ADD = 1;
+    public static final byte REMOVE = 2;
+    public static final byte REPRIORITIZE = 3;
+    public static final byte RENAME = 4;
+
+    // One slot per entry, kept in parallel arrays so recording never allocates
+    private final byte[] types;
+    private final Task[] tasks;
+    private final int[] indexes;       // Position in insertion order (ADD, REMOVE)
+    private final int[] oldPriorities; // REPRIORITIZE
+    private final int[] newPriorities; // REPRIORITIZE
+    private final String[] oldNames;   // RENAME
+    private final String[] newNames;   // RENAME
+
+    private int oldest = 0;     // Slot of the oldest entry
+    private int undoCount = 0;  // Entries that can be undone
+    private int redoCount = 0;  // Entries after the cursor that can be redone
+
+    /**
+     * Create an empty history
+     * @param capacity The most entries to remember
+     */
+    public UndoHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        types = new byte[capacity];
+        tasks = new Task[capacity];
+        indexes = new int[capacity];
+        oldPriorities = new int[capacity];
+        newPriorities = new int[capacity];
+        oldNames = new String[capacity];
+        newNames = new String[capacity];
+    }
+
+    /**
+     * Record that a task was added
+     * @param task The task
+     * @param index The position it was added at
+     */
+    public void recordAdd(Task task, int index) {
+        int slot = nextSlot();
+        types[slot] = ADD;
+        tasks[slot] = task;
+        indexes[slot] = index;
+    }
+
+    /**
+     * Record that a task was removed
+     * @param task The task
+     * @param index The position it was removed from
+     */
+    public void recordRemove(Task task, int index) {
+        int slot = nextSlot();
+        types[slot] = REMOVE;
+        tasks[slot] = task;
+        indexes[slot] = index;
+    }
+
+    /**
+     * Record a priority change, merging it into the previous entry when that
+     * entry changed the priority of the same task
+     * @param task The task
+     * @param oldPriority The priority before the change
+     * @param newPriority The priority after the change
+     */
+    public void recordReprioritize(Task task, int oldPriority, int newPriority) {
+        int last = lastSlot();
+        if (redoCount == 0 && last >= 0 && types[last] == REPRIORITIZE && tasks[last] == task) {
+            newPriorities[last] = newPriority;
+            if (oldPriorities[last] == newPriority) {
+                dropLast(); // The changes cancelled out
+            }
+            return;
+        }
+        int slot = nextSlot();
+        types[slot] = REPRIORITIZE;
+        tasks[slot] = task;
+        oldPriorities[slot] = oldPriority;
+        newPriorities[slot] = newPriority;
+    }
+
+    /**
+     * Record a rename, merging it into the previous entry when that entry
+     * renamed the same task
+     * @param task The task
+     * @param oldName The name before the change
+     * @param newName The name after the change
+     */
+    public void recordRename(Task task, String oldName, String newName) {
+        int last = lastSlot();
+        if (redoCount == 0 && last >= 0 && types[last] == RENAME && tasks[last] == task) {
+            newNames[last] = newName;
+            if (oldNames[last].equals(newName)) {
+                dropLast();
+            }
+            return;
+        }
+        int slot = nextSlot();
+        types[slot] = RENAME;
+        tasks[slot] = task;
+        oldNames[slot] = oldName;
+        newNames[slot] = newName;
+    }
+
+    /**
+     * Move the cursor back one entry
+     * @return The slot of the entry to reverse, or -1 if there is nothing to undo
+     */
+    public int stepBack() {
+        if (undoCount == 0) {
+            return -1;
+        }
+        undoCount--;
+        redoCount++;
+        return slotAt(undoCount);
+    }
+
+    /**
+     * Move the cursor forward one entry
+     * @return The slot of the entry to reapply, or -1 if there is nothing to redo
+     */
+    public int stepForward() {
+        if (redoCount == 0) {
+            return -1;
+        }
+        int slot = slotAt(undoCount);
+        undoCount++;
+        redoCount--;
+        return slot;
+    }
+
+    /** Return the number of changes that can be undone */
+    public int undoSize() {
+        return undoCount;
+    }
+
+    /** Return the number of changes that can be redone */
+    public int redoSize() {
+        return redoCount;
+    }
+
+    /** Return the type of the entry in a slot */
+    public byte typeAt(int slot) {
+        return types[slot];
+    }
+
+    /** Return the task of the entry in a slot */
+    public Task taskAt(int slot) {
+        return tasks[slot];
+    }
+
+    /** Return the insertion-order position of an ADD or REMOVE entry */
+    public int indexAt(int slot) {
+        return indexes[slot];
+    }
+
+    /** Return the priority before a REPRIORITIZE entry */
+    public int oldPriorityAt(int slot) {
+        return oldPriorities[slot];
+    }
+
+    /** Return the priority after a REPRIORITIZE entry */
+    public int newPriorityAt(int slot) {
+        return newPriorities[slot];
+    }
+
+    /** Return the name before a RENAME entry */
+    public String oldNameAt(int slot) {
+        return oldNames[slot];
+    }
+
+    /** Return the name after a RENAME entry */
+    public String newNameAt(int slot) {
+        return newNames[slot];
+    }
+
+    /**
+     * Forget every entry
+     */
+    public void clear() {
+        for (int i = 0; i < undoCount + redoCount; i++) {
+            clearSlot(slotAt(i));
+        }
+        oldest = 0;
+        undoCount = 0;
+        redoCount = 0;
+    }
+
+    private int nextSlot() {
+        // A new change makes the redo entries unreachable
+        for (int i = 0; i < redoCount; i++) {
+            clearSlot(slotAt(undoCount + i));
+        }
+        redoCount = 0;
+
+        if (undoCount == types.length) {
+            // Full: overwrite the oldest entry
+            int slot = oldest;
+            clearSlot(slot);
+            oldest = (oldest + 1) % types.length;
+            return slot;
+        }
+        return slotAt(undoCount++);
+    }
+
+    private int lastSlot() {
+        return undoCount == 0 ? -1 : slotAt(undoCount - 1);
+    }
+
+    private void dropLast() {
+        clearSlot(lastSlot());
+        undoCount--;
+    }
+
+    private int slotAt(int offset) {
+        return (oldest + offset) % types.length;
+    }
+
+    private void clearSlot(int slot) {
+        // Drop references so forgotten tasks can be garbage collected
+        tasks[slot] = null;
+        oldNames[slot] = null;
+        newNames[slot] = null;
+    }
+}
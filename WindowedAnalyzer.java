@@ -0,0 +1,445 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * WindowedAnalyzer keeps statistics over the recent part of a stream: either the
+ * last N items (a count window) or the items from the last T milliseconds (a time
+ * window). Items leave the window as newer ones push them out, and every
+ * statistic forgets them as they go, so memory is bounded by the window rather
+ * than the stream.
+ *
+ * Each update is amortized O(1):
+ * - min and max come from monotonic deques, which drop any item that can never
+ *   be the answer again (an older item larger than a newer one can't be the min)
+ * - the sum comes from a two-stack aggregate, so nothing is ever subtracted and
+ *   a huge value leaving the window can't wipe out the small ones beside it
+ * - frequencies and the mode are counted up on arrival and down on expiry
+ *
+ * Queries answer for the sliding window ending at the latest item. Windows can
+ * also be reported as they close: hopping(hop, listener) reports one every hop
+ * items or milliseconds, and tumbling(listener) reports back-to-back windows that
+ * don't overlap.
+ *
+ * @param <T> The type of item
+ */
+public class WindowedAnalyzer<T extends Comparable<T>> {
+    /** The statistics of one window, fixed when it was taken */
+    public static final class Window<T> {
+        private final long start;
+        private final long end;
+        private final int count;
+        private final T min;
+        private final T max;
+        private final T mostFrequent;
+        private final double sum;
+        private final double average;
+
+        Window(long start, long end, int count, T min, T max, T mostFrequent, double sum, double average) {
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mostFrequent = mostFrequent;
+            this.sum = sum;
+            this.average = average;
+        }
+
+        /** Return where the window starts: an item number or a timestamp, inclusive */
+        public long getStart() {
+            return start;
+        }
+
+        /** Return where the window ends: an item number or a timestamp, exclusive */
+        public long getEnd() {
+            return end;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public T getMin() {
+            return min;
+        }
+
+        public T getMax() {
+            return max;
+        }
+
+        public T getMostFrequent() {
+            return mostFrequent;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getAverage() {
+            return average;
+        }
+
+        @Override
+        public String toString() {
+            return "Window[" + start + ", " + end + "){count=" + count + ", min=" + min + ", max=" + max
+                    + ", mode=" + mostFrequent + ", average=" + String.format("%.2f", average) + "}";
+        }
+    }
+
+    // An item with its position: its item number in a count window, its timestamp in a time window
+    private static final class Entry<T> {
+        final T item;
+        final long position;
+
+        Entry(T item, long position) {
+            this.item = item;
+            this.position = position;
+        }
+    }
+
+    private final boolean timed;
+    private final long length;
+    private final ArrayDeque<Entry<T>> items = new ArrayDeque<>();
+    // Increasing and decreasing runs of items; the front of each is the answer
+    private final ArrayDeque<Entry<T>> minimums = new ArrayDeque<>();
+    private final ArrayDeque<Entry<T>> maximums = new ArrayDeque<>();
+    private final RunningStats<T> frequencies = new RunningStats<>(false);
+
+    // The sum is split in two: the oldest items have suffix sums, laid down in
+    // one pass when the previous batch ran out, and newer items a running total
+    private double[] suffixSums = new double[16];
+    private int suffixStart = 0;
+    private int suffixEnd = 0;
+    private double newerSum = 0;
+    private int numericCount = 0;
+
+    private long added = 0;
+    private long now = Long.MIN_VALUE;
+
+    private long hop = 0;
+    private Consumer<Window<T>> listener;
+    private long nextBoundary = Long.MIN_VALUE;
+
+    private WindowedAnalyzer(boolean timed, long length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Window length must be positive: " + length);
+        }
+        this.timed = timed;
+        this.length = length;
+    }
+
+    /**
+     * Create an analyzer over the most recent items
+     * @param size The number of items in the window
+     * @return The analyzer
+     */
+    public static <T extends Comparable<T>> WindowedAnalyzer<T> lastItems(int size) {
+        return new WindowedAnalyzer<>(false, size);
+    }
+
+    /**
+     * Create an analyzer over the items from a recent span of time. The window
+     * holds the items whose timestamps are within durationMillis of the latest.
+     * @param durationMillis The length of the window in milliseconds
+     * @return The analyzer
+     */
+    public static <T extends Comparable<T>> WindowedAnalyzer<T> lastMillis(long durationMillis) {
+        return new WindowedAnalyzer<>(true, durationMillis);
+    }
+
+    /**
+     * Report a window every hop items (or milliseconds). Time windows close on
+     * multiples of hop, once an item at or past the boundary arrives or time is
+     * advanced past it; windows with no items are not reported.
+     * @param hop How far apart windows end; the window length for tumbling windows
+     * @param listener Called with each window as it closes
+     * @return This analyzer
+     */
+    public WindowedAnalyzer<T> hopping(long hop, Consumer<Window<T>> listener) {
+        if (hop <= 0) {
+            throw new IllegalArgumentException("Hop must be positive: " + hop);
+        }
+        if (added > 0) {
+            throw new IllegalStateException("Set up hopping windows before adding items");
+        }
+        this.hop = hop;
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Report windows that follow each other without overlapping
+     * @param listener Called with each window as it closes
+     * @return This analyzer
+     */
+    public WindowedAnalyzer<T> tumbling(Consumer<Window<T>> listener) {
+        return hopping(length, listener);
+    }
+
+    /** Add an item, stamped with the current time in a time window; nulls are ignored */
+    public void add(T item) {
+        if (timed) {
+            add(item, Math.max(now, System.currentTimeMillis()));
+            return;
+        }
+        if (item == null) {
+            return;
+        }
+        push(item, added++);
+        evictBefore(added - length);
+        if (listener != null && added % hop == 0) {
+            listener.accept(snapshot(added - items.size(), added));
+        }
+    }
+
+    /**
+     * Add an item to a time window
+     * @param item The item; nulls are ignored
+     * @param timestamp Its time in milliseconds, no earlier than the last one
+     */
+    public void add(T item, long timestamp) {
+        advanceTo(timestamp);
+        if (item == null) {
+            return;
+        }
+        if (listener != null && nextBoundary == Long.MIN_VALUE) {
+            nextBoundary = Math.floorDiv(timestamp, hop) * hop + hop;
+        }
+        push(item, timestamp);
+        added++;
+    }
+
+    /**
+     * Move a time window forward without adding anything, expiring old items and
+     * reporting any hopping windows that have closed
+     * @param timestamp The current time in milliseconds, no earlier than the last one
+     */
+    public void advanceTo(long timestamp) {
+        if (!timed) {
+            throw new IllegalStateException("Count windows have no time to advance");
+        }
+        if (timestamp < now) {
+            throw new IllegalArgumentException("Time went backwards: " + timestamp + " < " + now);
+        }
+        now = timestamp;
+        while (listener != null && nextBoundary != Long.MIN_VALUE && nextBoundary <= timestamp) {
+            evictBefore(nextBoundary - length);
+            if (items.isEmpty()) {
+                // Nothing arrived since, so every window up to now would be empty
+                nextBoundary = Math.floorDiv(timestamp, hop) * hop + hop;
+                break;
+            }
+            listener.accept(snapshot(nextBoundary - length, nextBoundary));
+            nextBoundary += hop;
+        }
+        evictBefore(timestamp - length + 1);
+    }
+
+    /** Return the number of items in the window */
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /** Return the smallest item in the window, or null if it is empty */
+    public T min() {
+        return minimums.isEmpty() ? null : minimums.peekFirst().item;
+    }
+
+    /** Return the largest item in the window, or null if it is empty */
+    public T max() {
+        return maximums.isEmpty() ? null : maximums.peekFirst().item;
+    }
+
+    /** Return the sum of the numeric items in the window */
+    public double sum() {
+        double older = suffixStart < suffixEnd ? suffixSums[suffixStart] : 0;
+        return older + newerSum;
+    }
+
+    /** Return the average of the numeric items in the window, or 0 if there are none */
+    public double average() {
+        return numericCount > 0 ? sum() / numericCount : 0.0;
+    }
+
+    /** Return how many times an item occurs in the window */
+    public int frequencyOf(T item) {
+        return frequencies.frequencyOf(item);
+    }
+
+    /** Return the item occurring most often in the window, or null if it is empty */
+    public T mostFrequent() {
+        return frequencies.mostFrequent();
+    }
+
+    /** Return the statistics of the window as it stands */
+    public Window<T> snapshot() {
+        if (timed) {
+            return new Window<>(now - length + 1, now + 1, items.size(), min(), max(), mostFrequent(), sum(), average());
+        }
+        return snapshot(added - items.size(), added);
+    }
+
+    /** Return the items in the window, oldest first */
+    public List<T> toList() {
+        List<T> result = new ArrayList<>(items.size());
+        for (Entry<T> entry : items) {
+            result.add(entry.item);
+        }
+        return result;
+    }
+
+    /** Forget every item, keeping the window settings */
+    public void clear() {
+        while (!items.isEmpty()) {
+            evictOldest();
+        }
+        added = 0;
+        now = Long.MIN_VALUE;
+        nextBoundary = Long.MIN_VALUE;
+    }
+
+    private Window<T> snapshot(long start, long end) {
+        return new Window<>(start, end, items.size(), min(), max(), mostFrequent(), sum(), average());
+    }
+
+    private void push(T item, long position) {
+        Entry<T> entry = new Entry<>(item, position);
+        items.addLast(entry);
+        while (!minimums.isEmpty() && minimums.peekLast().item.compareTo(item) > 0) {
+            minimums.pollLast();
+        }
+        minimums.addLast(entry);
+        while (!maximums.isEmpty() && maximums.peekLast().item.compareTo(item) < 0) {
+            maximums.pollLast();
+        }
+        maximums.addLast(entry);
+        frequencies.add(item);
+        if (item instanceof Number) {
+            newerSum += ((Number) item).doubleValue();
+            numericCount++;
+        }
+    }
+
+    private void evictBefore(long position) {
+        while (!items.isEmpty() && items.peekFirst().position < position) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        Entry<T> entry = items.pollFirst();
+        // Anything still in a deque is the oldest there, since deques keep arrival order
+        if (minimums.peekFirst() == entry) {
+            minimums.pollFirst();
+        }
+        if (maximums.peekFirst() == entry) {
+            maximums.pollFirst();
+        }
+        frequencies.remove(entry.item);
+        if (suffixStart == suffixEnd) {
+            layDownSuffixSums(entry);
+        }
+        suffixStart++;
+        if (entry.item instanceof Number) {
+            numericCount--;
+        }
+    }
+
+    // Turn every item still counted in newerSum (the leaving one included) into
+    // suffix sums, so each later eviction just moves one step along the array
+    private void layDownSuffixSums(Entry<T> leaving) {
+        int n = items.size() + 1;
+        if (suffixSums.length < n) {
+            suffixSums = new double[Math.max(n, suffixSums.length * 2)];
+        }
+        double total = 0;
+        int index = n;
+        Iterator<Entry<T>> newestFirst = items.descendingIterator();
+        while (newestFirst.hasNext()) {
+            total += valueOf(newestFirst.next().item);
+            suffixSums[--index] = total;
+        }
+        suffixSums[0] = total + valueOf(leaving.item);
+        suffixStart = 0;
+        suffixEnd = n;
+        newerSum = 0;
+    }
+
+    private static double valueOf(Object item) {
+        return item instanceof Number ? ((Number) item).doubleValue() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowedAnalyzer{" + (timed ? length + " ms" : length + " items") + ", " + snapshot() + "}";
+    }
+
+    // Demonstration: sliding statistics checked against a brute-force scan, then per-second windows
+    public static void main(String[] args) {
+        Random random = new Random(42);
+
+        System.out.println("=== Sliding Count Window ===");
+        final int size = 1000;
+        WindowedAnalyzer<Integer> sliding = WindowedAnalyzer.lastItems(size);
+        ArrayDeque<Integer> recent = new ArrayDeque<>();
+        boolean matches = true;
+        for (int i = 0; i < 200_000; i++) {
+            int value = random.nextInt(10_000);
+            sliding.add(value);
+            recent.addLast(value);
+            if (recent.size() > size) {
+                recent.pollFirst();
+            }
+            if (i % 997 == 0) {
+                long exactSum = 0;
+                int exactMin = Integer.MAX_VALUE;
+                int exactMax = Integer.MIN_VALUE;
+                for (int v : recent) {
+                    exactSum += v;
+                    exactMin = Math.min(exactMin, v);
+                    exactMax = Math.max(exactMax, v);
+                }
+                matches &= sliding.min() == exactMin && sliding.max() == exactMax && sliding.sum() == exactSum;
+            }
+        }
+        System.out.println("Last " + size + " items: " + sliding.snapshot());
+        System.out.println("Matches a full scan: " + matches);
+
+        final int updates = 10_000_000;
+        WindowedAnalyzer<Integer> timing = WindowedAnalyzer.lastItems(100_000);
+        long started = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            timing.add(random.nextInt(1_000_000));
+        }
+        long elapsed = System.nanoTime() - started;
+        System.out.printf("%,d updates of a 100,000-item window: %d ms (%.0f ns each), min=%d, max=%d%n",
+                updates, elapsed / 1_000_000, (double) elapsed / updates, timing.min(), timing.max());
+
+        System.out.println("\n=== Tumbling and Hopping Time Windows ===");
+        // Simulated response times, one every 50 ms on average, with a slow spell after 3 s
+        WindowedAnalyzer<Integer> perSecond = WindowedAnalyzer.<Integer>lastMillis(1000)
+                .tumbling(window -> System.out.println("Tumbling " + window));
+        List<Window<Integer>> hopped = new ArrayList<>();
+        WindowedAnalyzer<Integer> overlapping = WindowedAnalyzer.<Integer>lastMillis(2000)
+                .hopping(500, hopped::add);
+        long time = 0;
+        while (time < 5000) {
+            int latency = time >= 3000 && time < 4000 ? 200 + random.nextInt(100) : 20 + random.nextInt(30);
+            perSecond.add(latency, time);
+            overlapping.add(latency, time);
+            time += random.nextInt(100);
+        }
+        perSecond.advanceTo(5000);
+        overlapping.advanceTo(5000);
+        System.out.println("Hopping 2 s windows every 500 ms: " + hopped.size() + " reported, last " + hopped.get(hopped.size() - 1));
+        System.out.println("Sliding last second at 5000 ms: " + perSecond.snapshot());
+    }
+}
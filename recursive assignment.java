@@ -1,24 +1,285 @@
 // RecursiveAssignment.java
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
 public class RecursiveAssignment {
 
-    // Part 1: Recursive multiplication using repeated addition
+    // Part 1: Multiplication
+    // The first version added x to itself y times, recursing once per addition, so
+    // large y overflowed the stack and negative y never reached the base case.
+    // Russian-peasant multiplication halves y and doubles x at each step instead:
+    // x * y = (2x) * (y / 2), plus x when y is odd. That is O(log y) steps in a loop.
     public static int multiply(int x, int y) {
-        // Base case: if y is 0, the result is 0
-        if (y == 0) {
-            return 0;
+        return Math.toIntExact(multiply((long) x, (long) y));
+    }
+
+    // Long multiplication by halving and doubling; throws ArithmeticException on overflow
+    public static long multiply(long x, long y) {
+        // Move the sign onto x; -y of Long.MIN_VALUE is 2^63 read as unsigned, which is right
+        long addend = y < 0 ? Math.negateExact(x) : x;
+        long bits = y < 0 ? -y : y;
+        long result = 0;
+        while (bits != 0) {
+            if ((bits & 1) != 0) {
+                result = Math.addExact(result, addend);
+            }
+            bits >>>= 1;
+            // Every term has the same sign, so a doubling that overflows while bits
+            // remain means the product overflows too
+            if (bits != 0) {
+                addend = Math.addExact(addend, addend);
+            }
         }
-        // Recursive case: x * y = x + (x * (y - 1))
-        return x + multiply(x, y - 1);
+        return result;
+    }
+
+    // Multiplication with no overflow at all
+    public static BigInteger bigMultiply(long x, long y) {
+        return BigInteger.valueOf(x).multiply(BigInteger.valueOf(y));
     }
 
-    // Part 2: Recursive power function (x raised to y)
+    // Part 2: Powers
+    // The first version multiplied by base exponent times. Exponentiation by
+    // squaring uses base^e = (base^2)^(e / 2), times base when e is odd, so it
+    // takes O(log e) multiplications.
     public static int power(int base, int exponent) {
-        // Base case: anything raised to 0 is 1
-        if (exponent == 0) {
-            return 1;
+        return Math.toIntExact(power((long) base, exponent));
+    }
+
+    // Long power by squaring; throws ArithmeticException on overflow
+    public static long power(long base, int exponent) {
+        checkExponent(exponent);
+        long result = 1;
+        long square = base;
+        int bits = exponent;
+        while (bits != 0) {
+            if ((bits & 1) != 0) {
+                result = Math.multiplyExact(result, square);
+            }
+            bits >>>= 1;
+            // Only square when a higher bit still needs it, so the last square can't overflow needlessly
+            if (bits != 0) {
+                square = Math.multiplyExact(square, square);
+            }
+        }
+        return result;
+    }
+
+    // Powers too large for a long
+    public static BigInteger bigPower(long base, int exponent) {
+        checkExponent(exponent);
+        // BigInteger.pow also squares, and handles powers of two by shifting
+        return BigInteger.valueOf(base).pow(exponent);
+    }
+
+    // base^exponent mod modulus for any long modulus, without overflow
+    public static long modPow(long base, long exponent, long modulus) {
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Exponent must not be negative: " + exponent);
+        }
+        if (modulus <= 0) {
+            throw new IllegalArgumentException("Modulus must be positive: " + modulus);
+        }
+        long result = 1 % modulus;
+        long square = Math.floorMod(base, modulus);
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result = multiplyMod(result, square, modulus);
+            }
+            exponent >>>= 1;
+            if (exponent != 0) {
+                square = multiplyMod(square, square, modulus);
+            }
+        }
+        return result;
+    }
+
+    // a * b mod m for a, b in [0, m). Small moduli multiply directly; larger ones use
+    // Russian-peasant multiplication with every partial sum reduced mod m
+    static long multiplyMod(long a, long b, long m) {
+        if (m <= 3037000499L) {
+            // (m - 1)^2 still fits in a long
+            return a * b % m;
+        }
+        long result = 0;
+        while (b != 0) {
+            if ((b & 1) != 0) {
+                result = addMod(result, a, m);
+            }
+            b >>>= 1;
+            if (b != 0) {
+                a = addMod(a, a, m);
+            }
+        }
+        return result;
+    }
+
+    // a + b mod m for a, b in [0, m), without overflowing
+    private static long addMod(long a, long b, long m) {
+        return a >= m - b ? a - (m - b) : a + b;
+    }
+
+    private static void checkExponent(int exponent) {
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Exponent must not be negative: " + exponent);
+        }
+    }
+
+    // Part 3: Matrix powers for linear recurrences
+    // A recurrence a(n) = c1*a(n-1) + ... + ck*a(n-k) steps forward by multiplying
+    // the vector of the last k terms by a k x k matrix, so a(n) comes from the
+    // matrix raised to the power n: O(k^3 log n) instead of n steps.
+
+    // Square matrix power; throws ArithmeticException if an entry overflows
+    public static long[][] matrixPower(long[][] matrix, long exponent) {
+        return matrixPower(matrix, exponent, 0);
+    }
+
+    // Square matrix power with every entry reduced mod modulus (0 for exact arithmetic)
+    public static long[][] matrixPower(long[][] matrix, long exponent, long modulus) {
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Exponent must not be negative: " + exponent);
         }
-        // Recursive case: base^exponent = base * base^(exponent - 1)
-        return base * power(base, exponent - 1);
+        if (modulus < 0) {
+            throw new IllegalArgumentException("Modulus must not be negative: " + modulus);
+        }
+        int k = matrix.length;
+        long[][] result = new long[k][k];
+        long[][] square = new long[k][];
+        for (int i = 0; i < k; i++) {
+            if (matrix[i].length != k) {
+                throw new IllegalArgumentException("Matrix must be square");
+            }
+            result[i][i] = modulus == 1 ? 0 : 1;
+            square[i] = matrix[i].clone();
+            if (modulus != 0) {
+                for (int j = 0; j < k; j++) {
+                    square[i][j] = Math.floorMod(square[i][j], modulus);
+                }
+            }
+        }
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result = matrixMultiply(result, square, modulus);
+            }
+            exponent >>>= 1;
+            if (exponent != 0) {
+                square = matrixMultiply(square, square, modulus);
+            }
+        }
+        return result;
+    }
+
+    private static long[][] matrixMultiply(long[][] a, long[][] b, long modulus) {
+        int k = a.length;
+        long[][] product = new long[k][k];
+        for (int i = 0; i < k; i++) {
+            for (int m = 0; m < k; m++) {
+                long left = a[i][m];
+                if (left == 0) {
+                    continue;
+                }
+                for (int j = 0; j < k; j++) {
+                    if (modulus == 0) {
+                        product[i][j] = Math.addExact(product[i][j], Math.multiplyExact(left, b[m][j]));
+                    } else {
+                        product[i][j] = addMod(product[i][j], multiplyMod(left, b[m][j], modulus), modulus);
+                    }
+                }
+            }
+        }
+        return product;
+    }
+
+    // Term n of a(n) = coefficients[0]*a(n-1) + ... + coefficients[k-1]*a(n-k), where
+    // initial holds a(0) to a(k-1). Pass modulus 0 for the exact value.
+    public static long linearRecurrence(long[] coefficients, long[] initial, long n, long modulus) {
+        int k = coefficients.length;
+        if (k == 0 || initial.length != k) {
+            throw new IllegalArgumentException("Need as many initial terms as coefficients");
+        }
+        if (n < 0) {
+            throw new IllegalArgumentException("Term must not be negative: " + n);
+        }
+        if (n < k) {
+            return modulus == 0 ? initial[(int) n] : Math.floorMod(initial[(int) n], modulus);
+        }
+        // Companion matrix: the first row applies the coefficients, the rest shift terms down
+        long[][] step = new long[k][k];
+        step[0] = coefficients.clone();
+        for (int i = 1; i < k; i++) {
+            step[i][i - 1] = 1;
+        }
+        long[][] jump = matrixPower(step, n - k + 1, modulus);
+        // The state vector is a(k-1), a(k-2), ..., a(0); a(n) is the first entry after the jump
+        long term = 0;
+        for (int j = 0; j < k; j++) {
+            long value = initial[k - 1 - j];
+            if (modulus == 0) {
+                term = Math.addExact(term, Math.multiplyExact(jump[0][j], value));
+            } else {
+                term = addMod(term, multiplyMod(jump[0][j], Math.floorMod(value, modulus), modulus), modulus);
+            }
+        }
+        return term;
+    }
+
+    // Fibonacci number n (fits a long up to n = 92)
+    public static long fibonacci(long n) {
+        return linearRecurrence(new long[] {1, 1}, new long[] {0, 1}, n, 0);
+    }
+
+    // Fibonacci number n mod modulus, for any n
+    public static long fibonacci(long n, long modulus) {
+        return linearRecurrence(new long[] {1, 1}, new long[] {0, 1}, n, modulus);
+    }
+
+    // Part 4: The same recursions on DivideAndConquer
+    // The original recursion x * y = x + x * (y - 1), one level per addition. On
+    // DivideAndConquer's trampoline the levels live on the heap, so a y in the
+    // millions no longer overflows the stack (it still takes y steps).
+    public static long multiplyByAddition(long x, long y) {
+        if (y < 0) {
+            return multiplyByAddition(Math.negateExact(x), Math.negateExact(y));
+        }
+        DivideAndConquer<Long, Long> steps = DivideAndConquer.<Long, Long>of(
+                n -> n == 0,
+                n -> 0L,
+                n -> Collections.singletonList(n - 1),
+                (n, rest) -> Math.addExact(x, rest.get(0)));
+        return steps.solve(y);
+    }
+
+    // Squaring as split and combine: base^e comes from base^(e / 2)
+    public static long powerBySquaring(long base, int exponent) {
+        checkExponent(exponent);
+        DivideAndConquer<Integer, Long> steps = DivideAndConquer.<Integer, Long>of(
+                e -> e == 0,
+                e -> 1L,
+                e -> Collections.singletonList(e / 2),
+                (e, half) -> {
+                    long square = Math.multiplyExact(half.get(0), half.get(0));
+                    return e % 2 == 0 ? square : Math.multiplyExact(square, base);
+                });
+        return steps.solve(exponent);
+    }
+
+    // Fibonacci straight from its definition F(n) = F(n-1) + F(n-2). The two calls
+    // overlap, which takes exponential time without a memo and linear time with one.
+    public static BigInteger fibonacciByDefinition(int n, boolean memoize) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Term must not be negative: " + n);
+        }
+        DivideAndConquer<Integer, BigInteger> steps = DivideAndConquer.<Integer, BigInteger>of(
+                k -> k < 2,
+                k -> BigInteger.valueOf(k),
+                k -> Arrays.asList(k - 1, k - 2),
+                (k, parts) -> parts.get(0).add(parts.get(1)));
+        if (memoize) {
+            steps.withMemo(1024);
+        }
+        return steps.solve(n);
     }
 
     // Demonstration
@@ -27,10 +288,51 @@ public class RecursiveAssignment {
         int x = 7, y = 4;
         int resultMultiply = multiply(x, y);
         System.out.println(x + " * " + y + " = " + resultMultiply);
+        System.out.println("7 * -4 = " + multiply(7, -4));
+        // The old version recursed a billion times here
+        System.out.println("3 * 1000000000 = " + multiply(3L, 1_000_000_000L));
 
         // Part 2 demo
         int base = 3, exponent = 4;
         int resultPower = power(base, exponent);
         System.out.println(base + " ^ " + exponent + " = " + resultPower);
+        System.out.println("2 ^ 62 = " + power(2L, 62));
+        try {
+            power(3L, 40);
+        } catch (ArithmeticException e) {
+            System.out.println("3 ^ 40 overflows a long: " + e.getMessage());
+        }
+        System.out.println("3 ^ 40 = " + bigPower(3, 40));
+        System.out.println("2 ^ 10^18 mod 1000000007 = " + modPow(2, 1_000_000_000_000_000_000L, 1_000_000_007));
+        // A modulus near 2^62 would overflow a plain a * b % m
+        System.out.println("3 ^ (2^61 - 2) mod (2^61 - 1) = " + modPow(3, (1L << 61) - 2, (1L << 61) - 1)
+                + " (1, since 2^61 - 1 is prime)");
+
+        // Part 3 demo
+        System.out.println("Fibonacci(90) = " + fibonacci(90));
+        System.out.println("Fibonacci(10^18) mod 1000000007 = " + fibonacci(1_000_000_000_000_000_000L, 1_000_000_007));
+        // Tribonacci: a(n) = a(n-1) + a(n-2) + a(n-3)
+        System.out.println("Tribonacci(50) = " + linearRecurrence(new long[] {1, 1, 1}, new long[] {0, 0, 1}, 50, 0));
+
+        // Part 4 demo: the recursive definitions run on DivideAndConquer
+        long startTime = System.nanoTime();
+        long byAddition = multiplyByAddition(3, 1_000_000);
+        long additionTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        long byHalving = multiply(3L, 1_000_000L);
+        long halvingTime = System.nanoTime() - startTime;
+        System.out.println("3 * 1000000 by a million levels of addition: " + byAddition + " in "
+                + additionTime / 1_000 + " us, by halving: " + byHalving + " in " + halvingTime / 1_000 + " us");
+        System.out.println("3 ^ 39 by squaring on the framework: " + powerBySquaring(3, 39));
+        startTime = System.nanoTime();
+        BigInteger plain = fibonacciByDefinition(27, false);
+        long plainTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        BigInteger memoized = fibonacciByDefinition(27, true);
+        long memoTime = System.nanoTime() - startTime;
+        System.out.println("Fibonacci(27) by definition: " + plain + " in " + plainTime / 1_000_000
+                + " ms, with a memo: " + memoized + " in " + memoTime / 1_000 + " us");
+        System.out.println("Fibonacci(20000) by definition with a memo has "
+                + fibonacciByDefinition(20_000, true).toString().length() + " digits");
     }
 }